@@ -63,6 +63,9 @@ public class ARActivity extends Activity {
 		public void onManagerConnected(int status) {
 			switch (status) {
 			case LoaderCallbackInterface.SUCCESS:
+				if (getIntent().getBooleanExtra(
+						StageBenchmark.EXTRA_RUN_BENCHMARK, false))
+					StageBenchmark.runInBackground(getExternalFilesDir(null));
 				mOpenCvCameraView.enableView();
 				break;
 			default:
@@ -83,6 +86,7 @@ public class ARActivity extends Activity {
 		super.onCreate(savedInstanceState);
 
 		stateModel.cameraParameters = new CameraParameters();
+		imageRecognizer.sessionDirectory = getExternalFilesDir(null);
 
 		getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 		setContentView(R.layout.surface_view);
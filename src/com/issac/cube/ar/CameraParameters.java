@@ -48,6 +48,23 @@ public class CameraParameters {
 		fovX = parameters.getHorizontalViewAngle() * (float) (Math.PI / 180.0);
 	}
 
+	public CameraParameters(int widthPixels, int heightPixels, float fovX,
+			float fovY) {
+		parameters = null;
+		this.widthPixels = widthPixels;
+		this.heightPixels = heightPixels;
+		this.fovX = fovX;
+		this.fovY = fovY;
+	}
+
+	public float getFovX() {
+		return fovX;
+	}
+
+	public float getFovY() {
+		return fovY;
+	}
+
 	public Mat getCameraMatrix() {
 		double focalLengthXPixels = widthPixels / (2.0 * Math.tan(0.5 * fovX));
 		double focalLengthYPixels = heightPixels / (2.0 * Math.tan(0.5 * fovY));
@@ -0,0 +1,126 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+public class CapturedFrame implements CvCameraViewFrame {
+
+	private final Mat yuv = new Mat();
+	private final Mat rgba = new Mat();
+	private final Mat gray = new Mat();
+	private Mat yuvGray = null;
+	private final NV21HeaderCache nv21HeaderCache = new NV21HeaderCache();
+	private boolean yuvFrame = false;
+	private boolean rgbaValid = false;
+	private boolean grayValid = false;
+	private int width = 0;
+	private int height = 0;
+	public long timestamp;
+
+	public void copyFrom(CvCameraViewFrame inputFrame) {
+		Mat nv21 = null;
+		if (MenuParam.yuvNativeRecognition) {
+			Mat inputGray = inputFrame.gray();
+			nv21 = nv21HeaderCache.getNV21Frame(inputGray);
+			if (nv21 != null && !(inputFrame instanceof CapturedFrame))
+				inputGray.release();
+		}
+		if (nv21 != null) {
+			nv21.copyTo(yuv);
+			setYuvGray(yuv.cols(), yuv.rows() * 2 / 3);
+			yuvFrame = true;
+			rgbaValid = false;
+		} else {
+			inputFrame.rgba().copyTo(rgba);
+			width = rgba.cols();
+			height = rgba.rows();
+			yuvFrame = false;
+			rgbaValid = true;
+			grayValid = false;
+		}
+		timestamp = System.nanoTime();
+	}
+
+	public void put(int width, int height, boolean nv21, byte[] data,
+			long timestamp) {
+		if (nv21) {
+			yuv.create(height * 3 / 2, width, CvType.CV_8UC1);
+			yuv.put(0, 0, data);
+			setYuvGray(width, height);
+			rgbaValid = false;
+		} else {
+			rgba.create(height, width, CvType.CV_8UC4);
+			rgba.put(0, 0, data);
+			this.width = width;
+			this.height = height;
+			rgbaValid = true;
+			grayValid = false;
+		}
+		this.timestamp = timestamp;
+		yuvFrame = nv21;
+	}
+
+	private void setYuvGray(int width, int height) {
+		if (yuvGray == null || width != yuvGray.cols()
+				|| height != yuvGray.rows()) {
+			if (yuvGray != null)
+				yuvGray.release();
+			yuvGray = yuv.submat(0, height, 0, width);
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override
+	public Mat rgba() {
+		if (!rgbaValid) {
+			Imgproc.cvtColor(yuv, rgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+			rgbaValid = true;
+		}
+		return rgba;
+	}
+
+	@Override
+	public Mat gray() {
+		if (yuvFrame)
+			return yuvGray;
+
+		if (!grayValid) {
+			Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY);
+			grayValid = true;
+		}
+		return gray;
+	}
+
+	public void release() {
+		if (yuvGray != null)
+			yuvGray.release();
+		yuvGray = null;
+		yuv.release();
+		rgba.release();
+		gray.release();
+		nv21HeaderCache.release();
+		rgbaValid = false;
+		grayValid = false;
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.issac.cube.ar.Constants.ColorTileEnum;
+
+public class ColorLookupTable {
+
+	public static final int MAGIC = 0x49434c31;
+	public static final int BITS = 5;
+	public static final int LEVELS = 1 << BITS;
+	public static final int SIZE = LEVELS * LEVELS * LEVELS;
+	private static final int SHIFT = 8 - BITS;
+	private static final int REBUILD_STEP = 4096;
+	private static final double CALIBRATION_WEIGHT = 0.05;
+	private static final double MIN_CALIBRATION_CONFIDENCE = 0.3;
+	private static final double REBUILD_THRESHOLD = 4.0;
+
+	private static final ColorTileEnum[] TILES = ColorRecognizer.FaceRecognizer.CANDIDATE_TILES;
+
+	private byte[] candidateTable = new byte[SIZE];
+	private byte[] confidenceTable = new byte[SIZE];
+	private byte[] pendingCandidateTable = new byte[SIZE];
+	private byte[] pendingConfidenceTable = new byte[SIZE];
+	private final double[] centroidYUV = new double[3 * TILES.length];
+	private final double[] tableCentroidYUV = new double[3 * TILES.length];
+	private final double[] pendingCentroidYUV = new double[3 * TILES.length];
+	private final double[] rgb = new double[3];
+	private final double[] yuv = new double[3];
+	private int rebuildIndex = -1;
+	public int rebuildCount = 0;
+
+	public ColorLookupTable() {
+		reset();
+	}
+
+	public synchronized void reset() {
+		for (int c = 0; c < TILES.length; c++)
+			Util.getYUVfromRGB(TILES[c].tileColor.val, centroidYUV, 3 * c);
+		rebuild();
+	}
+
+	public static int getCell(double r, double g, double b) {
+		return quantize(r) << 2 * BITS | quantize(g) << BITS | quantize(b);
+	}
+
+	private static int quantize(double value) {
+		return Math.max(0, Math.min(LEVELS - 1, (int) value >> SHIFT));
+	}
+
+	public int getCandidate(int cell) {
+		return candidateTable[cell];
+	}
+
+	public double getConfidence(int cell) {
+		return (confidenceTable[cell] & 0xFF) / 255.0;
+	}
+
+	public ColorTileEnum getColorTile(int cell) {
+		return TILES[candidateTable[cell]];
+	}
+
+	public void classifyPixels(byte[] pixels, int channels, int count,
+			byte[] candidates) {
+		byte[] table = candidateTable;
+		for (int i = 0, p = 0; i < count; i++, p += channels)
+			candidates[i] = table[(pixels[p] & 0xFF) >> SHIFT << 2 * BITS
+					| (pixels[p + 1] & 0xFF) >> SHIFT << BITS
+					| (pixels[p + 2] & 0xFF) >> SHIFT];
+	}
+
+	public synchronized void calibrate(Face face) {
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++) {
+				double[] measuredColor = face.measuredColorArray[n][m];
+				int cell = getCell(measuredColor[0], measuredColor[1],
+						measuredColor[2]);
+				if (getConfidence(cell) < MIN_CALIBRATION_CONFIDENCE)
+					continue;
+
+				int c = 3 * candidateTable[cell];
+				Util.getYUVfromRGB(measuredColor, yuv, 0);
+				for (int k = 0; k < 3; k++)
+					centroidYUV[c + k] += CALIBRATION_WEIGHT
+							* (yuv[k] - centroidYUV[c + k]);
+			}
+
+		if (rebuildIndex < 0 && getCentroidShift() > REBUILD_THRESHOLD) {
+			System.arraycopy(centroidYUV, 0, pendingCentroidYUV, 0,
+					centroidYUV.length);
+			rebuildIndex = 0;
+		}
+		update();
+	}
+
+	public synchronized void update() {
+		if (rebuildIndex < 0)
+			return;
+
+		int end = Math.min(SIZE, rebuildIndex + REBUILD_STEP);
+		build(pendingCentroidYUV, pendingCandidateTable,
+				pendingConfidenceTable, rebuildIndex, end);
+		rebuildIndex = end;
+		if (rebuildIndex < SIZE)
+			return;
+
+		byte[] tmp = candidateTable;
+		candidateTable = pendingCandidateTable;
+		pendingCandidateTable = tmp;
+		tmp = confidenceTable;
+		confidenceTable = pendingConfidenceTable;
+		pendingConfidenceTable = tmp;
+		System.arraycopy(pendingCentroidYUV, 0, tableCentroidYUV, 0,
+				tableCentroidYUV.length);
+		rebuildIndex = -1;
+		rebuildCount++;
+	}
+
+	private double getCentroidShift() {
+		double shift = 0.0;
+		for (int c = 0; c < TILES.length; c++) {
+			double dy = centroidYUV[3 * c] - tableCentroidYUV[3 * c];
+			double du = centroidYUV[3 * c + 1] - tableCentroidYUV[3 * c + 1];
+			double dv = centroidYUV[3 * c + 2] - tableCentroidYUV[3 * c + 2];
+			shift = Math.max(shift, Math.sqrt(dy * dy + du * du + dv * dv));
+		}
+		return shift;
+	}
+
+	private void rebuild() {
+		build(centroidYUV, candidateTable, confidenceTable, 0, SIZE);
+		System.arraycopy(centroidYUV, 0, tableCentroidYUV, 0,
+				centroidYUV.length);
+		rebuildIndex = -1;
+		rebuildCount++;
+	}
+
+	private void build(double[] centroids, byte[] candidates,
+			byte[] confidences, int start, int end) {
+		for (int cell = start; cell < end; cell++) {
+			rgb[0] = ((cell >> 2 * BITS) + 0.5) * (1 << SHIFT);
+			rgb[1] = (((cell >> BITS) & (LEVELS - 1)) + 0.5) * (1 << SHIFT);
+			rgb[2] = ((cell & (LEVELS - 1)) + 0.5) * (1 << SHIFT);
+			Util.getYUVfromRGB(rgb, yuv, 0);
+
+			double nearest = Double.MAX_VALUE, second = Double.MAX_VALUE;
+			int best = 0;
+			for (int c = 0; c < centroids.length / 3; c++) {
+				double dy = centroids[3 * c] - yuv[0];
+				double du = centroids[3 * c + 1] - yuv[1];
+				double dv = centroids[3 * c + 2] - yuv[2];
+				double error = dy * dy + du * du + dv * dv;
+				if (error < nearest) {
+					second = nearest;
+					nearest = error;
+					best = c;
+				} else if (error < second)
+					second = error;
+			}
+
+			candidates[cell] = (byte) best;
+			confidences[cell] = (byte) Math.round(255.0 * (1.0 - Math
+					.sqrt(nearest / second)));
+		}
+	}
+
+	public synchronized void save(File file) throws IOException {
+		DataOutputStream outputStream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			outputStream.writeInt(MAGIC);
+			outputStream.writeInt(centroidYUV.length);
+			for (double value : centroidYUV)
+				outputStream.writeDouble(value);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	public synchronized void load(File file) throws IOException {
+		DataInputStream inputStream = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		double[] centroids = new double[centroidYUV.length];
+		try {
+			if (inputStream.readInt() != MAGIC
+					|| inputStream.readInt() != centroids.length)
+				throw new IOException("Not a color calibration file " + file);
+			for (int i = 0; i < centroids.length; i++)
+				centroids[i] = inputStream.readDouble();
+		} finally {
+			inputStream.close();
+		}
+		System.arraycopy(centroids, 0, centroidYUV, 0, centroids.length);
+		rebuild();
+	}
+}
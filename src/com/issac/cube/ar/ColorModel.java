@@ -0,0 +1,193 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.issac.cube.ar.Constants.ColorTileEnum;
+
+public class ColorModel {
+
+	private static final int NUM_FACES = 6;
+	private static final int CLUSTER_CAPACITY = 9;
+	private static final int MAX_ITERATIONS = 8;
+	private static final ColorTileEnum[] CLUSTER_TILES = ColorRecognizer.FaceRecognizer.CANDIDATE_TILES;
+	private static final double[] REFERENCE_LAB = new double[3 * NUM_FACES];
+
+	static {
+		for (int c = 0; c < NUM_FACES; c++)
+			Util.getLabfromRGB(CLUSTER_TILES[c].cvColor.val, REFERENCE_LAB,
+					3 * c);
+	}
+
+	private final List<Face> faceList = new ArrayList<Face>(NUM_FACES);
+	private final double[] tileLab = new double[3 * 9 * NUM_FACES];
+	private final int[] tileCluster = new int[9 * NUM_FACES];
+	private final int[] previousCluster = new int[9 * NUM_FACES];
+	private final double[] centroidLab = REFERENCE_LAB.clone();
+	private final boolean[] seeded = new boolean[NUM_FACES];
+	private final int[] centerCluster = new int[NUM_FACES];
+	private final int[] clusterCount = new int[NUM_FACES];
+	private final long[] pairKeys = new long[9 * NUM_FACES * NUM_FACES];
+	public long reclassifications = 0;
+	public int lastIterations = 0;
+
+	public void addFace(Face face) {
+		if (faceList.size() >= NUM_FACES)
+			return;
+
+		int f = faceList.size();
+		faceList.add(face);
+		for (int t = 0; t < 9; t++)
+			Util.getLabfromRGB(face.measuredColorArray[t / 3][t % 3], tileLab,
+					3 * (9 * f + t));
+
+		int center = 9 * f + 4;
+		int best = -1;
+		double bestDistance = Double.MAX_VALUE;
+		for (int c = 0; c < NUM_FACES; c++) {
+			if (seeded[c])
+				continue;
+			double distance = getDistance(center, c);
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = c;
+			}
+		}
+		seeded[best] = true;
+		centerCluster[f] = best;
+		System.arraycopy(tileLab, 3 * center, centroidLab, 3 * best, 3);
+
+		classify();
+	}
+
+	public void classify() {
+		int numTiles = 9 * faceList.size();
+		Arrays.fill(tileCluster, 0, numTiles, -1);
+
+		int iterations = 0;
+		boolean changed = true;
+		while (changed && iterations < MAX_ITERATIONS) {
+			changed = assign(numTiles);
+			updateCentroids(numTiles);
+			iterations++;
+		}
+		lastIterations = iterations;
+		reclassifications++;
+
+		for (int f = 0; f < faceList.size(); f++) {
+			Face face = faceList.get(f);
+			if (face.modelTileArray == null) {
+				face.modelTileArray = new ColorTileEnum[3][3];
+				face.modelConfidenceArray = new double[3][3];
+			}
+			for (int t = 0; t < 9; t++) {
+				int tile = 9 * f + t;
+				int cluster = tileCluster[tile];
+				double distance = getDistance(tile, cluster);
+				double nearestOther = Double.MAX_VALUE;
+				for (int c = 0; c < NUM_FACES; c++)
+					if (c != cluster)
+						nearestOther = Math.min(nearestOther,
+								getDistance(tile, c));
+
+				face.modelTileArray[t / 3][t % 3] = CLUSTER_TILES[cluster];
+				face.modelConfidenceArray[t / 3][t % 3] = nearestOther > 0.0 ? Math
+						.max(0.0, 1.0 - Math.sqrt(distance / nearestOther))
+						: 0.0;
+			}
+		}
+	}
+
+	private boolean assign(int numTiles) {
+		System.arraycopy(tileCluster, 0, previousCluster, 0, numTiles);
+		Arrays.fill(clusterCount, 0);
+		int numKeys = 0;
+		for (int tile = 0; tile < numTiles; tile++) {
+			if (tile % 9 == 4) {
+				tileCluster[tile] = centerCluster[tile / 9];
+				clusterCount[tileCluster[tile]]++;
+				continue;
+			}
+			tileCluster[tile] = -1;
+			for (int c = 0; c < NUM_FACES; c++)
+				pairKeys[numKeys++] = ((long) Float
+						.floatToIntBits((float) getDistance(tile, c)) << 32)
+						| (tile * NUM_FACES + c);
+		}
+
+		Arrays.sort(pairKeys, 0, numKeys);
+		for (int k = 0; k < numKeys; k++) {
+			int pair = (int) pairKeys[k];
+			int tile = pair / NUM_FACES;
+			int c = pair % NUM_FACES;
+			if (tileCluster[tile] >= 0 || clusterCount[c] >= CLUSTER_CAPACITY)
+				continue;
+			tileCluster[tile] = c;
+			clusterCount[c]++;
+		}
+
+		for (int tile = 0; tile < numTiles; tile++)
+			if (tileCluster[tile] != previousCluster[tile])
+				return true;
+		return false;
+	}
+
+	private void updateCentroids(int numTiles) {
+		for (int c = 0; c < NUM_FACES; c++) {
+			double weight = seeded[c] ? 0.0 : 1.0;
+			double l = weight * REFERENCE_LAB[3 * c];
+			double a = weight * REFERENCE_LAB[3 * c + 1];
+			double b = weight * REFERENCE_LAB[3 * c + 2];
+			for (int tile = 0; tile < numTiles; tile++) {
+				if (tileCluster[tile] != c)
+					continue;
+				l += tileLab[3 * tile];
+				a += tileLab[3 * tile + 1];
+				b += tileLab[3 * tile + 2];
+				weight++;
+			}
+			if (weight == 0.0)
+				continue;
+			centroidLab[3 * c] = l / weight;
+			centroidLab[3 * c + 1] = a / weight;
+			centroidLab[3 * c + 2] = b / weight;
+		}
+	}
+
+	private double getDistance(int tile, int cluster) {
+		double dl = tileLab[3 * tile] - centroidLab[3 * cluster];
+		double da = tileLab[3 * tile + 1] - centroidLab[3 * cluster + 1];
+		double db = tileLab[3 * tile + 2] - centroidLab[3 * cluster + 2];
+		return dl * dl + da * da + db * db;
+	}
+
+	public int getNumFaces() {
+		return faceList.size();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"color model faces=%d reclassifications=%d iterations=%d",
+				faceList.size(), reclassifications, lastIterations);
+	}
+}
@@ -28,12 +28,8 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 
-import org.opencv.core.Core;
-import org.opencv.core.CvException;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
 
 import com.issac.cube.ar.Constants.ColorTileEnum;
 import com.issac.cube.ar.Constants.FaceNameEnum;
@@ -270,139 +266,137 @@ public class ColorRecognizer {
 
 	public static class FaceRecognizer {
 
+		static final ColorTileEnum[] CANDIDATE_TILES;
+		private static final double[] CANDIDATE_YUV;
+		private static final boolean[] CANDIDATE_LUMINOUS;
+
+		static {
+			int count = 0;
+			for (ColorTileEnum colorTile : ColorTileEnum.values())
+				if (colorTile.isTileColor)
+					count++;
+
+			CANDIDATE_TILES = new ColorTileEnum[count];
+			CANDIDATE_YUV = new double[3 * count];
+			CANDIDATE_LUMINOUS = new boolean[count];
+			int c = 0;
+			for (ColorTileEnum colorTile : ColorTileEnum.values())
+				if (colorTile.isTileColor) {
+					CANDIDATE_TILES[c] = colorTile;
+					Util.getYUVfromRGB(colorTile.tileColor.val, CANDIDATE_YUV,
+							3 * c);
+					CANDIDATE_LUMINOUS[c] = colorTile != ColorTileEnum.RED
+							&& colorTile != ColorTileEnum.ORANGE
+							&& colorTile != ColorTileEnum.YELLOW;
+					c++;
+				}
+		}
+
 		private final Face face;
+		private final ColorLookupTable colorLookupTable;
+		private final double[] measuredYUV = new double[27];
+		private final int[] selectedCandidate = new int[9];
 		public double colorErrorBeforeCorrection;
 		public double colorErrorAfterCorrection;
 		public double luminousOffset = 0.0;
 
 		public FaceRecognizer(Face face) {
+			this(face, null);
+		}
+
+		public FaceRecognizer(Face face, ColorLookupTable colorLookupTable) {
 			this.face = face;
+			this.colorLookupTable = colorLookupTable;
 		}
 
 		public void recognize(Mat image) {
-			double[][] colorError = new double[3][3];
-
-			for (int n = 0; n < 3; n++)
-				for (int m = 0; m < 3; m++) {
-
-					Point tileCenter = face.getTileCenterInPixels(n, m);
-					Size size = image.size();
-					double width = size.width;
-					double height = size.height;
-
-					if (tileCenter.x < 10 || tileCenter.x > width - 10
-							|| tileCenter.y < 10 || tileCenter.y > height - 10)
-						face.measuredColorArray[n][m] = new double[4];
-					else
-						try {
-							Mat mat = image.submat((int) (tileCenter.y - 10),
-									(int) (tileCenter.y + 10),
-									(int) (tileCenter.x - 10),
-									(int) (tileCenter.x + 10));
-							face.measuredColorArray[n][m] = Core.mean(mat).val;
-						} catch (CvException cvException) {
-							face.measuredColorArray[n][m] = new double[4];
-						}
-				}
-
-			for (int n = 0; n < 3; n++)
-				for (int m = 0; m < 3; m++) {
-					double[] measuredColor = face.measuredColorArray[n][m];
-					double[] measuredColorYUV = Util
-							.getYUVfromRGB(measuredColor);
-
-					double smallestError = Double.MAX_VALUE;
-					ColorTileEnum bestCandidate = null;
-
-					for (ColorTileEnum candidateColorTile : Constants.ColorTileEnum
-							.values())
-						if (candidateColorTile.isTileColor) {
-							double[] candidateColorYUV = Util
-									.getYUVfromRGB(candidateColorTile.tileColor.val);
-
-							double error = (candidateColorYUV[1] - measuredColorYUV[1])
-									* (candidateColorYUV[1] - measuredColorYUV[1])
-									+ (candidateColorYUV[2] - measuredColorYUV[2])
-									* (candidateColorYUV[2] - measuredColorYUV[2]);
-
-							colorError[n][m] = Math.sqrt(error);
+			recognize(image, null, new TileColorSampler());
+		}
 
-							if (error < smallestError) {
-								bestCandidate = candidateColorTile;
-								smallestError = error;
-							}
-						}
+		public void recognize(Mat image, Mat nv21,
+				TileColorSampler tileColorSampler) {
+			double[] means = tileColorSampler.sample(image, nv21, face);
+			for (int t = 0; t < 9; t++) {
+				double[] measuredColor = face.measuredColorArray[t / 3][t % 3];
+				System.arraycopy(means, t * 4, measuredColor, 0, 4);
+				Util.getYUVfromRGB(measuredColor, measuredYUV, 3 * t);
+			}
 
-					face.observedTileArray[n][m] = bestCandidate;
+			if (colorLookupTable != null) {
+				for (int t = 0; t < 9; t++) {
+					double[] measuredColor = face.measuredColorArray[t / 3][t % 3];
+					int cell = ColorLookupTable.getCell(measuredColor[0],
+							measuredColor[1], measuredColor[2]);
+					selectedCandidate[t] = colorLookupTable.getCandidate(cell);
+					face.observedTileArray[t / 3][t % 3] = CANDIDATE_TILES[selectedCandidate[t]];
+					face.colorConfidenceArray[t / 3][t % 3] = colorLookupTable
+							.getConfidence(cell);
 				}
+				luminousOffset = 0.0;
+				colorErrorBeforeCorrection += calculateErrorTotal(0.0);
+				colorErrorAfterCorrection += calculateErrorTotal(0.0);
+				return;
+			}
 
-			for (int n = 0; n < 3; n++)
-				for (int m = 0; m < 3; m++) {
-					double[] selectedColor = face.observedTileArray[n][m].tileColor.val;
-					double[] measuredColor = face.measuredColorArray[n][m];
-					colorErrorBeforeCorrection += calculateError(selectedColor,
-							measuredColor, true, 0.0);
-				}
+			classify(false);
+			colorErrorBeforeCorrection += calculateErrorTotal(0.0);
 
 			luminousOffset = 0.0;
 			int count = 0;
-			for (int n = 0; n < 3; n++)
-				for (int m = 0; m < 3; m++) {
-					ColorTileEnum colorTile = face.observedTileArray[n][m];
-					if (colorTile == ColorTileEnum.RED
-							|| colorTile == ColorTileEnum.ORANGE
-							|| colorTile == ColorTileEnum.YELLOW)
-						continue;
-					double measuredLuminousity = Util
-							.getYUVfromRGB(face.measuredColorArray[n][m])[0];
-					double expectedLuminousity = Util
-							.getYUVfromRGB(colorTile.tileColor.val)[0];
-					luminousOffset += expectedLuminousity - measuredLuminousity;
-					count++;
-				}
+			for (int t = 0; t < 9; t++) {
+				int c = selectedCandidate[t];
+				if (!CANDIDATE_LUMINOUS[c])
+					continue;
+				luminousOffset += CANDIDATE_YUV[3 * c] - measuredYUV[3 * t];
+				count++;
+			}
 			luminousOffset = count == 0 ? 0.0 : luminousOffset / count;
 
-			for (int n = 0; n < 3; n++)
-				for (int m = 0; m < 3; m++) {
-					double[] measuredColor = face.measuredColorArray[n][m];
-					double[] measuredColorYUV = Util
-							.getYUVfromRGB(measuredColor);
-
-					double smallestError = Double.MAX_VALUE;
-					ColorTileEnum bestCandidate = null;
-
-					for (ColorTileEnum candidateColorTile : ColorTileEnum
-							.values())
-						if (candidateColorTile.isTileColor) {
-							double[] candidateColorYUV = Util
-									.getYUVfromRGB(candidateColorTile.tileColor.val);
-
-							double error = (candidateColorYUV[0] - (measuredColorYUV[0] + luminousOffset))
-									* (candidateColorYUV[0] - (measuredColorYUV[0] + luminousOffset))
-									+ (candidateColorYUV[1] - measuredColorYUV[1])
-									* (candidateColorYUV[1] - measuredColorYUV[1])
-									+ (candidateColorYUV[2] - measuredColorYUV[2])
-									* (candidateColorYUV[2] - measuredColorYUV[2]);
-
-							colorError[n][m] = Math.sqrt(error);
-
-							if (error < smallestError) {
-								bestCandidate = candidateColorTile;
-								smallestError = error;
-							}
-						}
+			classify(true);
+			colorErrorAfterCorrection += calculateErrorTotal(luminousOffset);
+		}
 
-					if (bestCandidate != face.observedTileArray[n][m])
-						face.observedTileArray[n][m] = bestCandidate;
-				}
+		private void classify(boolean useLuminous) {
+			for (int t = 0; t < 9; t++) {
+				double y = measuredYUV[3 * t] + luminousOffset;
+				double u = measuredYUV[3 * t + 1];
+				double v = measuredYUV[3 * t + 2];
+
+				double smallestError = Double.MAX_VALUE;
+				double secondError = Double.MAX_VALUE;
+				int bestCandidate = 0;
+				for (int c = 0; c < CANDIDATE_TILES.length; c++) {
+					double errorU = CANDIDATE_YUV[3 * c + 1] - u;
+					double errorV = CANDIDATE_YUV[3 * c + 2] - v;
+					double error = errorU * errorU + errorV * errorV;
+					if (useLuminous) {
+						double errorY = CANDIDATE_YUV[3 * c] - y;
+						error += errorY * errorY;
+					}
 
-			for (int n = 0; n < 3; n++)
-				for (int m = 0; m < 3; m++) {
-					double[] selectedColor = face.observedTileArray[n][m].tileColor.val;
-					double[] measuredColor = face.measuredColorArray[n][m];
-					colorErrorAfterCorrection += calculateError(selectedColor,
-							measuredColor, true, luminousOffset);
+					if (error < smallestError) {
+						bestCandidate = c;
+						secondError = smallestError;
+						smallestError = error;
+					} else if (error < secondError)
+						secondError = error;
 				}
+
+				selectedCandidate[t] = bestCandidate;
+				face.observedTileArray[t / 3][t % 3] = CANDIDATE_TILES[bestCandidate];
+				face.colorConfidenceArray[t / 3][t % 3] = 1.0 - Math
+						.sqrt(smallestError / secondError);
+			}
+		}
+
+		private double calculateErrorTotal(double _luminousOffset) {
+			double total = 0.0;
+			for (int t = 0; t < 9; t++)
+				total += calculateError(
+						CANDIDATE_TILES[selectedCandidate[t]].tileColor.val,
+						face.measuredColorArray[t / 3][t % 3], true,
+						_luminousOffset);
+			return total;
 		}
 
 		private static double calculateError(double[] selected,
@@ -40,7 +40,19 @@ public class Constants {
 	}
 
 	public enum AnnotationModeEnum {
-		LAYOUT, FACE_METRICS, COLOR_FACE, COLOR_CUBE, NORMAL
+		LAYOUT, FACE_METRICS, COLOR_FACE, COLOR_CUBE, PERFORMANCE, NORMAL
+	}
+
+	public enum ClusterModeEnum {
+		NONE, BEST, EACH
+	}
+
+	public enum LatticeFitModeEnum {
+		ITERATIVE, RANSAC
+	}
+
+	public enum PerformanceStageEnum {
+		GREYSCALE, GAUSSIAN, CANNY, DILATION, CONTOUR, POLYGON, RHOMBUS, TRACK, FACE_FIT, COLOR, POSE, OVERLAY, STEREO, FRAME
 	}
 
 	public enum FaceNameEnum {
@@ -45,7 +45,7 @@ public class CubePoseEstimator {
 		if (face == null || !face.solved || face.lmsResult == null)
 			return;
 
-		if (face.rhombusList.size() <= 4)
+		if (face.numRhombi <= 4)
 			return;
 
 		List<Point3> objectPointsList = new ArrayList<Point3>(9);
@@ -53,10 +53,10 @@ public class CubePoseEstimator {
 
 		for (int n = 0; n < 3; n++)
 			for (int m = 0; m < 3; m++) {
-				Rhombus rhombus = face.faceRhombusArray[n][m];
-				if (rhombus != null) {
-					Point imagePoint = new Point(rhombus.center.x,
-							rhombus.center.y);
+				int rhombus = face.faceRhombusArray[n][m];
+				if (rhombus >= 0) {
+					Point imagePoint = new Point(face.rhombusCenterX[rhombus],
+							face.rhombusCenterY[rhombus]);
 					imagePointsList.add(imagePoint);
 
 					int mm = 2 - n;
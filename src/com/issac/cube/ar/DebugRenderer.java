@@ -0,0 +1,124 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.issac.cube.ar.Constants.ColorTileEnum;
+import com.issac.cube.ar.Constants.ImageProcessModeEnum;
+
+public class DebugRenderer {
+
+	private final Mat canvas = new Mat();
+	private final Mat display = new Mat();
+	private ImageProcessModeEnum lastMode = null;
+	private boolean canvasValid = false;
+	private boolean rendering = false;
+	private boolean displayAnnotated = false;
+	private long frameCount = 0;
+	public long renderedFrames = 0;
+	public long skippedFrames = 0;
+
+	public static boolean isDebugMode(ImageProcessModeEnum mode) {
+		return mode == ImageProcessModeEnum.CONTOUR
+				|| mode == ImageProcessModeEnum.POLYGON
+				|| mode == ImageProcessModeEnum.RHOMBUS;
+	}
+
+	public boolean beginFrame(ImageProcessModeEnum mode, Size imageSize) {
+		if (mode != lastMode || canvas.cols() != (int) imageSize.width
+				|| canvas.rows() != (int) imageSize.height)
+			canvasValid = false;
+		lastMode = mode;
+
+		int interval = Math.max(1, MenuParam.debugRenderInterval);
+		rendering = !canvasValid || frameCount % interval == 0;
+		frameCount++;
+		if (rendering)
+			renderedFrames++;
+		else
+			skippedFrames++;
+		return rendering;
+	}
+
+	public boolean isRendering() {
+		return rendering;
+	}
+
+	public void setBackground(Mat greyscale) {
+		Imgproc.cvtColor(greyscale, canvas, Imgproc.COLOR_GRAY2BGRA, 4);
+	}
+
+	public void drawContours(List<MatOfPoint> contours, int scale, Scalar color) {
+		for (MatOfPoint contour : contours) {
+			Point[] points = contour.toArray();
+			for (Point point : points) {
+				point.x *= scale;
+				point.y *= scale;
+			}
+			drawPolygon(points, color);
+		}
+	}
+
+	public void drawPolygons(RhombusBatch rhombusBatch, Scalar color) {
+		for (int i = 0; i < rhombusBatch.size; i++)
+			rhombusBatch.draw(canvas, i, color);
+	}
+
+	public void drawRhombi(RhombusBatch rhombusBatch, Scalar color) {
+		for (int j = 0; j < rhombusBatch.numRhombi; j++)
+			rhombusBatch.draw(canvas, rhombusBatch.rhombusIndex[j], color);
+	}
+
+	public void drawPolygon(Point[] points, Scalar color) {
+		for (int i = 0; i < points.length; i++)
+			Core.line(canvas, points[i], points[(i + 1) % points.length],
+					color, 3);
+	}
+
+	public void drawText(String text, double fontScale) {
+		Core.putText(canvas, text, new Point(500, 50), Constants.FontFace,
+				fontScale, ColorTileEnum.RED.cvColor, 4);
+	}
+
+	public Mat endFrame(boolean annotate) {
+		if (rendering || displayAnnotated)
+			canvas.copyTo(display);
+		if (rendering)
+			canvasValid = true;
+		rendering = false;
+		displayAnnotated = annotate;
+		return display;
+	}
+
+	public void release() {
+		canvas.release();
+		display.release();
+		canvasValid = false;
+		displayAnnotated = false;
+	}
+}
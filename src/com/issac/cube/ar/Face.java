@@ -22,33 +22,41 @@
  */
 package com.issac.cube.ar;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.List;
-
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
+import java.util.Random;
+
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 
 import com.issac.cube.ar.Constants.ColorTileEnum;
 import com.issac.cube.ar.Constants.FaceNameEnum;
+import com.issac.cube.ar.Constants.LatticeFitModeEnum;
 
 public class Face {
+	private static final double LATTICE_SPACING_RATIO = 1.2;
+	private static final double INLIER_TOLERANCE = 0.25;
+
 	public boolean solved = false;
-	public List<Rhombus> rhombusList = new LinkedList<Rhombus>();
-	public Rhombus[][] faceRhombusArray = new Rhombus[3][3];
+	public int numRhombi = 0;
+	public double[] rhombusCenterX = new double[0];
+	public double[] rhombusCenterY = new double[0];
+	public int[][] faceRhombusArray = new int[3][3];
 	public ColorTileEnum[][] observedTileArray = new ColorTileEnum[3][3];
 	public ColorTileEnum[][] transformedTileArray = new ColorTileEnum[3][3];
 	public double[][][] measuredColorArray = new double[3][3][4];
+	public double[][] colorConfidenceArray = new double[3][3];
+	public ColorTileEnum[][] modelTileArray = null;
+	public double[][] modelConfidenceArray = null;
 	public double alphaAngle = 0.0;
 	public double betaAngle = 0.0;
 	public double alphaLatticLength = 0.0;
 	public double betaLatticLength = 0.0;
 	public double gammaRatio = 0.0;
+	public double rhombusLength = 0.0;
+	public double cosAlpha = 0.0;
+	public double sinAlpha = 0.0;
+	public double cosBeta = 0.0;
+	public double sinBeta = 0.0;
+	public Point[][] tileCenterArray = new Point[3][3];
 	public LeastMeanSquare lmsResult = new LeastMeanSquare(640, 225, 100, 314,
 			true);
 	public int numRhombusMoves = 0;
@@ -60,143 +68,396 @@ public class Face {
 		betaAngle = 135.0 * Math.PI / 180.0;
 		alphaLatticLength = 100.0;
 		betaLatticLength = 100.0;
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++) {
+				faceRhombusArray[n][m] = -1;
+				tileCenterArray[n][m] = new Point();
+			}
+		updateAngles();
+		updateTileCenters();
+	}
+
+	public void processRhombuses(RhombusBatch rhombusBatch, Mat image) {
+		if (fitLattice(rhombusBatch))
+			recognizeColors(image, null, new TileColorSampler(), null);
 	}
 
-	public void processRhombuses(List<Rhombus> rhombusList, Mat image) {
-		this.rhombusList = rhombusList;
+	public boolean fitLattice(RhombusBatch rhombusBatch) {
+		return fitLattice(rhombusBatch, rhombusBatch.rhombusIndex, 0,
+				rhombusBatch.numRhombi, null);
+	}
 
-		if (rhombusList.size() < 3) {
-			solved = false;
-			return;
+	public boolean fitLattice(RhombusBatch rhombusBatch, int[] indices,
+			int offset, int count, LatticeTracker latticeTracker) {
+		numRhombi = count;
+		rhombusCenterX = new double[count];
+		rhombusCenterY = new double[count];
+		for (int i = 0; i < count; i++) {
+			rhombusCenterX[i] = rhombusBatch.centerX[indices[offset + i]];
+			rhombusCenterY[i] = rhombusBatch.centerY[indices[offset + i]];
 		}
+		solved = false;
 
-		calculateMetrics();
+		if (numRhombi < 3)
+			return false;
 
-		if (!doInitialLayout()) {
-			solved = false;
-			return;
+		calculateMetrics(rhombusBatch, indices, offset);
+
+		if (latticeTracker != null && latticeTracker.hasPrediction()) {
+			boolean fastPath = fitPredictedLattice(latticeTracker);
+			latticeTracker.recordFit(fastPath);
+			if (fastPath)
+				return true;
+
+			double measuredAlphaAngle = alphaAngle;
+			double measuredBetaAngle = betaAngle;
+			double measuredGammaRatio = gammaRatio;
+			double measuredRhombusLength = rhombusLength;
+			latticeTracker.seed(this);
+			rhombusLength = alphaLatticLength / LATTICE_SPACING_RATIO;
+			updateAngles();
+			boolean seeded = fitLatticeLayout();
+			latticeTracker.recordSeededFit(seeded);
+			if (seeded)
+				return true;
+
+			alphaAngle = measuredAlphaAngle;
+			betaAngle = measuredBetaAngle;
+			gammaRatio = measuredGammaRatio;
+			rhombusLength = measuredRhombusLength;
+			numRhombusMoves = 0;
+			updateAngles();
 		}
 
+		return fitLatticeLayout();
+	}
+
+	private boolean fitLatticeLayout() {
+		if (MenuParam.latticeFitMode == LatticeFitModeEnum.RANSAC)
+			return fitLatticeRansac();
+
+		if (!doInitialLayout())
+			return false;
+
 		lmsResult = findOptimumFaceFit();
-		if (!lmsResult.valid) {
-			solved = false;
-			return;
-		}
+		if (!lmsResult.valid)
+			return false;
 
 		alphaLatticLength = lmsResult.alphaLattice;
 		betaLatticLength = gammaRatio * lmsResult.alphaLattice;
-		double lastSigma = lmsResult.sigma;
+		updateTileCenters();
 
 		while (lmsResult.sigma > MenuParam.faceLmsThresholdParam.value) {
-			if (numRhombusMoves > 5) {
-				solved = false;
-				return;
-			}
+			if (numRhombusMoves > 5)
+				return false;
 
-			if (!findAndMoveRhombus()) {
-				solved = false;
-				return;
-			}
+			if (!findAndMoveRhombus())
+				return false;
 			numRhombusMoves++;
 
 			lmsResult = findOptimumFaceFit();
-			if (!lmsResult.valid) {
-				solved = false;
-				return;
-			}
+			if (!lmsResult.valid)
+				return false;
 			alphaLatticLength = lmsResult.alphaLattice;
 			betaLatticLength = gammaRatio * lmsResult.alphaLattice;
-
-			if (lmsResult.sigma > lastSigma)
-				solved = false;
+			updateTileCenters();
 		}
 
-		new ColorRecognizer.FaceRecognizer(this).recognize(image);
+		return true;
+	}
+
+	public void recognizeColors(Mat image, Mat nv21,
+			TileColorSampler tileColorSampler, ColorLookupTable colorLookupTable) {
+		new ColorRecognizer.FaceRecognizer(this, colorLookupTable).recognize(
+				image, nv21, tileColorSampler);
+		updateHashCode();
+
+		solved = true;
+	}
 
+	public void updateHashCode() {
 		myHashCode = 0;
 		for (int n = 0; n < 3; n++)
 			for (int m = 0; m < 3; m++)
 				myHashCode = observedTileArray[n][m].hashCode()
 						^ Integer.rotateRight(myHashCode, 1);
-
-		solved = true;
 	}
 
-	public boolean doInitialLayout() {
-		List<Collection<Rhombus>> alphaListOfSets = createOptimizedList(new Comparator<Rhombus>() {
-			@Override
-			public int compare(Rhombus rhombus0, Rhombus rhombus1) {
-				return getAlpha(rhombus0) - getAlpha(rhombus1);
-			}
+	public boolean fitTrackedLattice(double[] tileCenterX,
+			double[] tileCenterY, boolean[] tileTracked) {
+		numRhombi = 9;
+		rhombusCenterX = tileCenterX.clone();
+		rhombusCenterY = tileCenterY.clone();
+		solved = false;
 
-			private int getAlpha(Rhombus rhombus) {
-				return (int) (rhombus.center.x * Math.cos(alphaAngle) + rhombus.center.y
-						* Math.sin(alphaAngle));
+		int rows = 0, cols = 0;
+		double alphaX = 0.0, alphaY = 0.0, betaX = 0.0, betaY = 0.0;
+		int alphaCount = 0, betaCount = 0;
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++) {
+				int t = n * 3 + m;
+				faceRhombusArray[n][m] = tileTracked[t] ? t : -1;
+				if (!tileTracked[t])
+					continue;
+				rows |= 1 << n;
+				cols |= 1 << m;
+				if (n < 2 && tileTracked[t + 3]) {
+					alphaX += tileCenterX[t + 3] - tileCenterX[t];
+					alphaY += tileCenterY[t + 3] - tileCenterY[t];
+					alphaCount++;
+				}
+				if (m < 2 && tileTracked[t + 1]) {
+					betaX += tileCenterX[t + 1] - tileCenterX[t];
+					betaY += tileCenterY[t + 1] - tileCenterY[t];
+					betaCount++;
+				}
 			}
-		});
+		if (rows != 7 || cols != 7 || alphaCount == 0 || betaCount == 0)
+			return false;
+
+		alphaAngle = Math.atan2(alphaY, alphaX);
+		betaAngle = Math.atan2(betaY, betaX);
+		gammaRatio = Math.sqrt(betaX * betaX + betaY * betaY) / betaCount
+				/ (Math.sqrt(alphaX * alphaX + alphaY * alphaY) / alphaCount);
+		updateAngles();
+
+		lmsResult = findOptimumFaceFit();
+		if (!lmsResult.valid)
+			return false;
+		alphaLatticLength = lmsResult.alphaLattice;
+		betaLatticLength = gammaRatio * lmsResult.alphaLattice;
+		updateTileCenters();
+
+		return lmsResult.sigma <= MenuParam.faceLmsThresholdParam.value;
+	}
+
+	private boolean fitPredictedLattice(LatticeTracker latticeTracker) {
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++)
+				faceRhombusArray[n][m] = -1;
+
+		int rows = 0, cols = 0;
+		for (int i = 0; i < numRhombi; i++) {
+			int cell = latticeTracker.getPredictedCell(rhombusCenterX[i],
+					rhombusCenterY[i]);
+			if (cell < 0)
+				continue;
+
+			int n = cell / 3;
+			int m = cell % 3;
+			if (faceRhombusArray[n][m] >= 0)
+				return false;
+			faceRhombusArray[n][m] = i;
+			rows |= 1 << n;
+			cols |= 1 << m;
+		}
+		if (rows != 7 || cols != 7)
+			return false;
 
-		List<Collection<Rhombus>> betaListOfSets = createOptimizedList(new Comparator<Rhombus>() {
-			@Override
-			public int compare(Rhombus rhombus0, Rhombus rhombus1) {
-				return getBeta(rhombus0) - getBeta(rhombus1);
+		lmsResult = findOptimumFaceFit();
+		if (!lmsResult.valid)
+			return false;
+		alphaLatticLength = lmsResult.alphaLattice;
+		betaLatticLength = gammaRatio * lmsResult.alphaLattice;
+		updateTileCenters();
+
+		return lmsResult.sigma <= MenuParam.faceLmsThresholdParam.value;
+	}
+
+	private boolean fitLatticeRansac() {
+		double alphaX = cosAlpha;
+		double alphaY = sinAlpha;
+		double betaX = gammaRatio * cosBeta;
+		double betaY = gammaRatio * sinBeta;
+		double det = alphaX * betaY - alphaY * betaX;
+		if (Math.abs(det) < 1e-6)
+			return false;
+
+		double expectedLength = LATTICE_SPACING_RATIO * rhombusLength;
+		int numPairs = numRhombi * (numRhombi - 1) / 2;
+		int numIterations = Math.min(numPairs,
+				MenuParam.ransacIterationBudget);
+		Random random = new Random(numRhombi);
+
+		int[] cell = new int[25];
+		double[] cellError = new double[25];
+		int[] layout = new int[9];
+		int[] bestLayout = new int[9];
+		double bestScore = 0.0;
+
+		int i = 0, j = 0;
+		for (int iteration = 0; iteration < numIterations; iteration++) {
+			if (numPairs <= MenuParam.ransacIterationBudget) {
+				if (++j >= numRhombi) {
+					i++;
+					j = i + 1;
+				}
+			} else {
+				i = random.nextInt(numRhombi);
+				j = random.nextInt(numRhombi - 1);
+				if (j >= i)
+					j++;
 			}
 
-			private int getBeta(Rhombus rhombus) {
-				return (int) (rhombus.center.x * Math.cos(betaAngle) + rhombus.center.y
-						* Math.sin(betaAngle));
+			double dx = rhombusCenterX[j] - rhombusCenterX[i];
+			double dy = rhombusCenterY[j] - rhombusCenterY[i];
+			double s = (dx * betaY - dy * betaX) / det;
+			double t = (alphaX * dy - alphaY * dx) / det;
+			int dn = (int) Math.round(s / expectedLength);
+			int dm = (int) Math.round(t / expectedLength);
+			if ((dn == 0 && dm == 0) || Math.abs(dn) > 2 || Math.abs(dm) > 2)
+				continue;
+
+			double length = (s * dn + t * dm) / (dn * dn + dm * dm);
+			if (length <= 0.0)
+				continue;
+
+			double score = scoreLattice(i, length, alphaX, alphaY, betaX,
+					betaY, det, cell, cellError, layout);
+			if (score > bestScore) {
+				bestScore = score;
+				System.arraycopy(layout, 0, bestLayout, 0, 9);
+				if (score > 8.0)
+					break;
 			}
-		});
+		}
+
+		if (bestScore == 0.0)
+			return false;
 
 		for (int n = 0; n < 3; n++)
-			for (int m = 0; m < 3; m++) {
-				Collection<Rhombus> alphaSet = alphaListOfSets.get(n);
-				Collection<Rhombus> betaSet = betaListOfSets.get(m);
+			for (int m = 0; m < 3; m++)
+				faceRhombusArray[n][m] = bestLayout[n * 3 + m];
 
-				List<Rhombus> commonElements = new LinkedList<Rhombus>(alphaSet);
-				commonElements.retainAll(betaSet);
+		lmsResult = findOptimumFaceFit();
+		if (!lmsResult.valid)
+			return false;
+		alphaLatticLength = lmsResult.alphaLattice;
+		betaLatticLength = gammaRatio * lmsResult.alphaLattice;
+		updateTileCenters();
 
-				if (commonElements.size() == 0)
-					faceRhombusArray[n][m] = null;
+		return lmsResult.sigma <= MenuParam.faceLmsThresholdParam.value;
+	}
 
-				else if (commonElements.size() == 1)
-					faceRhombusArray[n][m] = commonElements.get(0);
-				else
-					faceRhombusArray[n][m] = commonElements.get(0);
+	private double scoreLattice(int anchor, double length, double alphaX,
+			double alphaY, double betaX, double betaY, double det,
+			int[] cell, double[] cellError, int[] layout) {
+		double tolerance = INLIER_TOLERANCE * length;
+		for (int c = 0; c < 25; c++)
+			cell[c] = -1;
+
+		for (int k = 0; k < numRhombi; k++) {
+			double dx = rhombusCenterX[k] - rhombusCenterX[anchor];
+			double dy = rhombusCenterY[k] - rhombusCenterY[anchor];
+			int dn = (int) Math.round((dx * betaY - dy * betaX) / det / length);
+			int dm = (int) Math.round((alphaX * dy - alphaY * dx) / det
+					/ length);
+			if (Math.abs(dn) > 2 || Math.abs(dm) > 2)
+				continue;
+
+			double errorX = dx - length * (dn * alphaX + dm * betaX);
+			double errorY = dy - length * (dn * alphaY + dm * betaY);
+			double error = Math.sqrt(errorX * errorX + errorY * errorY);
+			if (error > tolerance)
+				continue;
+
+			int c = (dn + 2) * 5 + dm + 2;
+			if (cell[c] < 0 || error < cellError[c]) {
+				cell[c] = k;
+				cellError[c] = error;
 			}
+		}
 
-		for (int n = 0; n < 3; n++) {
-			boolean leastRow = true, leastCol = true;
-			for (int m = 0; m < 3; m++) {
-				leastRow &= faceRhombusArray[n][m] == null;
-				leastCol &= faceRhombusArray[m][n] == null;
+		double bestScore = 0.0;
+		for (int n0 = 0; n0 < 3; n0++)
+			for (int m0 = 0; m0 < 3; m0++) {
+				int count = 0;
+				double error = 0.0;
+				int rows = 0, cols = 0;
+				for (int n = 0; n < 3; n++)
+					for (int m = 0; m < 3; m++) {
+						int c = (n0 + n) * 5 + m0 + m;
+						if (cell[c] >= 0) {
+							count++;
+							error += cellError[c];
+							rows |= 1 << n;
+							cols |= 1 << m;
+						}
+					}
+				if (rows != 7 || cols != 7)
+					continue;
+
+				double score = count - error / (9 * tolerance);
+				if (score > bestScore) {
+					bestScore = score;
+					for (int n = 0; n < 3; n++)
+						for (int m = 0; m < 3; m++)
+							layout[n * 3 + m] = cell[(n0 + n) * 5 + m0 + m];
+				}
+			}
+
+		return bestScore;
+	}
+
+	public boolean doInitialLayout() {
+		int[] alphaGroup = new int[numRhombi];
+		int[] betaGroup = new int[numRhombi];
+		int[] alphaOrder = createOptimizedList(alphaAngle, alphaGroup);
+		createOptimizedList(betaAngle, betaGroup);
+
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++)
+				faceRhombusArray[n][m] = -1;
+
+		int rows = 0, cols = 0;
+		for (int i : alphaOrder) {
+			int n = alphaGroup[i];
+			int m = betaGroup[i];
+			if (faceRhombusArray[n][m] < 0) {
+				faceRhombusArray[n][m] = i;
+				rows |= 1 << n;
+				cols |= 1 << m;
 			}
-			if (leastRow || leastCol)
-				return false;
 		}
 
-		return true;
+		return rows == 7 && cols == 7;
 	}
 
-	private List<Collection<Rhombus>> createOptimizedList(
-			Comparator<Rhombus> comparator) {
-		int best_error = Integer.MAX_VALUE;
+	private int[] createOptimizedList(double angle, int[] group) {
+		long best_error = Long.MAX_VALUE;
 		int best_p = 0;
 		int best_q = 0;
 
-		int n = rhombusList.size();
+		int n = numRhombi;
+
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		int[] projection = new int[n];
+		for (int i = 0; i < n; i++)
+			projection[i] = (int) (rhombusCenterX[i] * cos + rhombusCenterY[i]
+					* sin);
+
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++) {
+			int j = i;
+			for (; j > 0 && projection[sorted[j - 1]] > projection[i]; j--)
+				sorted[j] = sorted[j - 1];
+			sorted[j] = i;
+		}
 
-		ArrayList<Rhombus> sortedRhombusList = new ArrayList<Rhombus>(
-				rhombusList);
-		Collections.sort(sortedRhombusList, comparator);
+		long[] sum = new long[n + 1];
+		long[] sumSquared = new long[n + 1];
+		for (int k = 0; k < n; k++) {
+			long value = projection[sorted[k]];
+			sum[k + 1] = sum[k] + value;
+			sumSquared[k + 1] = sumSquared[k] + value * value;
+		}
 
-		for (int p = 1; p < n - 1; p++)
+		for (int p = 1; p < n - 1; p++) {
+			long head = calculateError(sum, sumSquared, 0, p);
 			for (int q = p + 1; q < n; q++) {
-				int error = calculateError(sortedRhombusList.subList(0, p),
-						comparator)
-						+ calculateError(sortedRhombusList.subList(p, q),
-								comparator)
-						+ calculateError(sortedRhombusList.subList(q, n),
-								comparator);
+				long error = head + calculateError(sum, sumSquared, p, q)
+						+ calculateError(sum, sumSquared, q, n);
 
 				if (error < best_error) {
 					best_error = error;
@@ -204,135 +465,113 @@ public class Face {
 					best_q = q;
 				}
 			}
+		}
 
-		LinkedList<Collection<Rhombus>> result = new LinkedList<Collection<Rhombus>>();
-		result.add(sortedRhombusList.subList(0, best_p));
-		result.add(sortedRhombusList.subList(best_p, best_q));
-		result.add(sortedRhombusList.subList(best_q, n));
-		return result;
+		for (int k = 0; k < n; k++)
+			group[sorted[k]] = k < best_p ? 0 : k < best_q ? 1 : 2;
+		return sorted;
 	}
 
-	private int calculateError(List<Rhombus> subList,
-			Comparator<Rhombus> comparator) {
-		int n = subList.size();
-		int sumSquared = 0;
-
-		for (int i = 0; i < n - 1; i++)
-			for (int j = i + 1; j < n; j++) {
-				int cmp = comparator.compare(subList.get(i), subList.get(j));
-				sumSquared += cmp * cmp;
-			}
-
-		return sumSquared;
+	private static long calculateError(long[] sum, long[] sumSquared,
+			int from, int to) {
+		long groupSum = sum[to] - sum[from];
+		return (to - from) * (sumSquared[to] - sumSquared[from]) - groupSum
+				* groupSum;
 	}
 
-	private void calculateMetrics() {
-		int numElements = rhombusList.size();
-		for (Rhombus rhombus : rhombusList) {
-			alphaAngle += rhombus.alphaAngle;
-			betaAngle += rhombus.betaAngle;
-			gammaRatio += rhombus.gammaRatio;
+	private void calculateMetrics(RhombusBatch rhombusBatch, int[] indices,
+			int offset) {
+		for (int j = 0; j < numRhombi; j++) {
+			int i = indices[offset + j];
+			alphaAngle += rhombusBatch.alphaAngle[i];
+			betaAngle += rhombusBatch.betaAngle[i];
+			gammaRatio += rhombusBatch.gammaRatio[i];
+			rhombusLength += (rhombusBatch.alphaLength[i] + rhombusBatch.betaLength[i]) / 2;
 		}
 
-		alphaAngle = alphaAngle / numElements * Math.PI / 180.0;
-		betaAngle = betaAngle / numElements * Math.PI / 180.0;
-		gammaRatio = gammaRatio / numElements;
+		alphaAngle = alphaAngle / numRhombi * Math.PI / 180.0;
+		betaAngle = betaAngle / numRhombi * Math.PI / 180.0;
+		gammaRatio = gammaRatio / numRhombi;
+		rhombusLength = rhombusLength / numRhombi;
+		updateAngles();
 	}
 
-	private LeastMeanSquare findOptimumFaceFit() {
-		int k = 0;
-		for (int n = 0; n < 3; n++)
-			for (int m = 0; m < 3; m++)
-				if (faceRhombusArray[n][m] != null)
-					k++;
-
-		Mat bigAmatrix = new Mat(2 * k, 3, CvType.CV_64FC1);
-		Mat bigYmatrix = new Mat(2 * k, 1, CvType.CV_64FC1);
-		Mat bigXmatrix = new Mat(3, 1, CvType.CV_64FC1);
+	private void updateAngles() {
+		cosAlpha = Math.cos(alphaAngle);
+		sinAlpha = Math.sin(alphaAngle);
+		cosBeta = Math.cos(betaAngle);
+		sinBeta = Math.sin(betaAngle);
+	}
 
-		int index = 0;
+	private void updateTileCenters() {
 		for (int n = 0; n < 3; n++)
 			for (int m = 0; m < 3; m++) {
-				Rhombus rhombus = faceRhombusArray[n][m];
-				if (rhombus != null) {
-					{
-						double bigY = rhombus.center.x;
-						double bigA = n * Math.cos(alphaAngle) + gammaRatio * m
-								* Math.cos(betaAngle);
-
-						bigYmatrix.put(index, 0, new double[] { bigY });
-						bigAmatrix.put(index, 0, new double[] { 1.0 });
-						bigAmatrix.put(index, 1, new double[] { 0.0 });
-						bigAmatrix.put(index, 2, new double[] { bigA });
-
-						index++;
-					}
-
-					{
-						double bigY = rhombus.center.y;
-						double bigA = n * Math.sin(alphaAngle) + gammaRatio * m
-								* Math.sin(betaAngle);
-
-						bigYmatrix.put(index, 0, new double[] { bigY });
-						bigAmatrix.put(index, 0, new double[] { 0.0 });
-						bigAmatrix.put(index, 1, new double[] { 1.0 });
-						bigAmatrix.put(index, 2, new double[] { bigA });
-
-						index++;
-					}
-				}
+				Point tileCenter = tileCenterArray[n][m];
+				tileCenter.x = lmsResult.origin.x + n * alphaLatticLength
+						* cosAlpha + m * betaLatticLength * cosBeta;
+				tileCenter.y = lmsResult.origin.y + n * alphaLatticLength
+						* sinAlpha + m * betaLatticLength * sinBeta;
 			}
+	}
 
-		Core.solve(bigAmatrix, bigYmatrix, bigXmatrix, Core.DECOMP_NORMAL);
+	private LeastMeanSquare findOptimumFaceFit() {
+		double alphaX = cosAlpha;
+		double alphaY = sinAlpha;
+		double betaX = gammaRatio * cosBeta;
+		double betaY = gammaRatio * sinBeta;
 
-		Mat bigEmatrix = new Mat(2 * k, 1, CvType.CV_64FC1);
-		for (int r = 0; r < 2 * k; r++) {
-			double y = bigYmatrix.get(r, 0)[0];
-			double error = y;
-			for (int c = 0; c < 3; c++) {
-				double a = bigAmatrix.get(r, c)[0];
-				double x = bigXmatrix.get(c, 0)[0];
-				error -= a * x;
+		int k = 0;
+		double sumA = 0.0, sumB = 0.0, sumAA = 0.0;
+		double sumX = 0.0, sumY = 0.0, sumAX = 0.0, sumXX = 0.0;
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++) {
+				int rhombus = faceRhombusArray[n][m];
+				if (rhombus < 0)
+					continue;
+
+				double a = n * alphaX + m * betaX;
+				double b = n * alphaY + m * betaY;
+				double x = rhombusCenterX[rhombus];
+				double y = rhombusCenterY[rhombus];
+				k++;
+				sumA += a;
+				sumB += b;
+				sumAA += a * a + b * b;
+				sumX += x;
+				sumY += y;
+				sumAX += a * x + b * y;
+				sumXX += x * x + y * y;
 			}
-			bigEmatrix.put(r, 0, error);
-		}
 
-		double sigma = 0;
-		for (int r = 0; r < 2 * k; r++) {
-			double error = bigEmatrix.get(r, 0)[0];
-			sigma += error * error;
-		}
-		sigma = Math.sqrt(sigma);
+		double denominator = sumAA - (sumA * sumA + sumB * sumB) / k;
+		double alphaLatice = (sumAX - (sumA * sumX + sumB * sumY) / k)
+				/ denominator;
+		double x = (sumX - sumA * alphaLatice) / k;
+		double y = (sumY - sumB * alphaLatice) / k;
 
-		double x = bigXmatrix.get(0, 0)[0];
-		double y = bigXmatrix.get(1, 0)[0];
-		double alphaLatice = bigXmatrix.get(2, 0)[0];
-		boolean valid = !Double.isNaN(x) && !Double.isNaN(y)
-				&& !Double.isNaN(alphaLatice) && !Double.isNaN(sigma);
+		double sigma = Math.sqrt(Math.max(0.0, sumXX - x * sumX - y * sumY
+				- alphaLatice * sumAX));
+		boolean valid = denominator > 0.0 && !Double.isNaN(x)
+				&& !Double.isNaN(y) && !Double.isNaN(alphaLatice)
+				&& !Double.isNaN(sigma);
 
 		return new LeastMeanSquare(x, y, alphaLatice, sigma, valid);
 	}
 
 	private boolean findAndMoveRhombus() {
-		Rhombus largestErrorRhombus = null;
+		int largestErrorRhombus = -1;
 		double largetError = Double.NEGATIVE_INFINITY;
 		int tile_n = 0;
 		int tile_m = 0;
 		for (int n = 0; n < 3; n++)
 			for (int m = 0; m < 3; m++) {
-				Rhombus rhombus = faceRhombusArray[n][m];
-				if (rhombus != null) {
-					double tile_x = lmsResult.origin.x + n * alphaLatticLength
-							* Math.cos(alphaAngle) + m * betaLatticLength
-							* Math.cos(betaAngle);
-					double tile_y = lmsResult.origin.y + n * alphaLatticLength
-							* Math.sin(alphaAngle) + m * betaLatticLength
-							* Math.sin(betaAngle);
-
-					double error = Math.sqrt((rhombus.center.x - tile_x)
-							* (rhombus.center.x - tile_x)
-							+ (rhombus.center.y - tile_y)
-							* (rhombus.center.y - tile_y));
+				int rhombus = faceRhombusArray[n][m];
+				if (rhombus >= 0) {
+					double errorX = rhombusCenterX[rhombus]
+							- tileCenterArray[n][m].x;
+					double errorY = rhombusCenterY[rhombus]
+							- tileCenterArray[n][m].y;
+					double error = Math.sqrt(errorX * errorX + errorY * errorY);
 
 					if (error > largetError) {
 						largestErrorRhombus = rhombus;
@@ -343,19 +582,13 @@ public class Face {
 				}
 			}
 
-		double error_x = largestErrorRhombus.center.x
-				- (lmsResult.origin.x + tile_n * alphaLatticLength
-						* Math.cos(alphaAngle) + tile_m * betaLatticLength
-						* Math.cos(betaAngle));
-		double error_y = largestErrorRhombus.center.y
-				- (lmsResult.origin.y + tile_n * alphaLatticLength
-						* Math.sin(alphaAngle) + tile_m * betaLatticLength
-						* Math.sin(betaAngle));
+		double error_x = rhombusCenterX[largestErrorRhombus]
+				- tileCenterArray[tile_n][tile_m].x;
+		double error_y = rhombusCenterY[largestErrorRhombus]
+				- tileCenterArray[tile_n][tile_m].y;
 
-		double alphaError = error_x * Math.cos(alphaAngle) + error_y
-				* Math.sin(alphaAngle);
-		double betaError = error_x * Math.cos(betaAngle) + error_y
-				* Math.sin(betaAngle);
+		double alphaError = error_x * cosAlpha + error_y * sinAlpha;
+		double betaError = error_x * cosBeta + error_y * sinBeta;
 
 		int delta_n = (int) Math.round(alphaError / alphaLatticLength);
 		int delta_m = (int) Math.round(betaError / betaLatticLength);
@@ -375,7 +608,7 @@ public class Face {
 		if (new_n == tile_n && new_m == tile_m)
 			return false;
 		else {
-			Rhombus tmp = faceRhombusArray[new_n][new_m];
+			int tmp = faceRhombusArray[new_n][new_m];
 			faceRhombusArray[new_n][new_m] = faceRhombusArray[tile_n][tile_m];
 			faceRhombusArray[tile_n][tile_m] = tmp;
 			return true;
@@ -384,11 +617,7 @@ public class Face {
 	}
 
 	public Point getTileCenterInPixels(int n, int m) {
-		return new Point(lmsResult.origin.x + n * alphaLatticLength
-				* Math.cos(alphaAngle) + m * betaLatticLength
-				* Math.cos(betaAngle), lmsResult.origin.y + n
-				* alphaLatticLength * Math.sin(alphaAngle) + m
-				* betaLatticLength * Math.sin(betaAngle));
+		return tileCenterArray[n][m];
 	}
 
 	public class LeastMeanSquare {
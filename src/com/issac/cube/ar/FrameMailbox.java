@@ -0,0 +1,101 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.util.LinkedList;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+
+public class FrameMailbox {
+
+	private final LinkedList<CapturedFrame> freeFrameList = new LinkedList<CapturedFrame>();
+	private CapturedFrame pendingFrame = null;
+	private boolean closed = false;
+	public long publishedFrames = 0;
+	public long consumedFrames = 0;
+	public long droppedFrames = 0;
+	public double lastQueueAgeMillis = 0.0;
+	public double maxQueueAgeMillis = 0.0;
+	public double averageQueueAgeMillis = 0.0;
+
+	public FrameMailbox() {
+		for (int i = 0; i < 3; i++)
+			freeFrameList.add(new CapturedFrame());
+	}
+
+	public void publish(CvCameraViewFrame inputFrame) {
+		CapturedFrame frame;
+		synchronized (this) {
+			frame = freeFrameList.poll();
+		}
+		if (frame == null)
+			return;
+
+		frame.copyFrom(inputFrame);
+
+		synchronized (this) {
+			if (pendingFrame != null) {
+				droppedFrames++;
+				freeFrameList.add(pendingFrame);
+			}
+			pendingFrame = frame;
+			publishedFrames++;
+			notifyAll();
+		}
+	}
+
+	public synchronized CapturedFrame take() throws InterruptedException {
+		while (pendingFrame == null && !closed)
+			wait();
+		if (closed)
+			return null;
+
+		CapturedFrame frame = pendingFrame;
+		pendingFrame = null;
+		consumedFrames++;
+
+		lastQueueAgeMillis = (System.nanoTime() - frame.timestamp) / 1.0e6;
+		maxQueueAgeMillis = Math.max(maxQueueAgeMillis, lastQueueAgeMillis);
+		averageQueueAgeMillis += (lastQueueAgeMillis - averageQueueAgeMillis)
+				/ Math.min(consumedFrames, 30);
+		return frame;
+	}
+
+	public synchronized void recycle(CapturedFrame frame) {
+		freeFrameList.add(frame);
+	}
+
+	public synchronized void open() {
+		closed = false;
+	}
+
+	public synchronized void close() {
+		closed = true;
+		if (pendingFrame != null) {
+			freeFrameList.add(pendingFrame);
+			pendingFrame = null;
+		}
+		notifyAll();
+	}
+
+	public synchronized void release() {
+		for (CapturedFrame frame : freeFrameList)
+			frame.release();
+	}
+}
@@ -22,6 +22,8 @@
  */
 package com.issac.cube.ar;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -32,210 +34,641 @@ import org.opencv.core.CvException;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import android.annotation.SuppressLint;
 
+import com.issac.cube.ar.Constants.ClusterModeEnum;
 import com.issac.cube.ar.Constants.ColorTileEnum;
+import com.issac.cube.ar.Constants.GestureRecogniztionStateEnum;
 import com.issac.cube.ar.Constants.ImageProcessModeEnum;
+import com.issac.cube.ar.Constants.PerformanceStageEnum;
 
 public class ImageRecognizer implements CvCameraViewListener2 {
 
+	private static final int ROI_ALIGNMENT = 16;
+	private static final Point MORPHOLOGY_ANCHOR = new Point(-1, -1);
+	private static final Scalar MORPHOLOGY_BORDER_VALUE = Scalar
+			.all(Double.MAX_VALUE);
+
 	private final StateController stateController;
 	private final StateModel stateModel;
 	private final Overlay overlay;
+	private final MatPool matPool = new MatPool();
+	private final PerformanceMonitor performanceMonitor = new PerformanceMonitor();
+	private final Mat heirarchy = new Mat();
+	private final FrameMailbox frameMailbox = new FrameMailbox();
+	private final StereoComposer stereoComposer = new StereoComposer();
+	private final DebugRenderer debugRenderer = new DebugRenderer();
+	private final PolygonApproximator polygonApproximator = new PolygonApproximator();
+	private final RhombusBatch rhombusBatch = new RhombusBatch();
+	private final RhombusClusterer rhombusClusterer = new RhombusClusterer();
+	private final LatticeTracker latticeTracker = new LatticeTracker();
+	private final StickerTracker stickerTracker = new StickerTracker();
+	private final TileColorSampler tileColorSampler = new TileColorSampler();
+	private final ColorLookupTable colorLookupTable = new ColorLookupTable();
+	private final TileColorFusion tileColorFusion = new TileColorFusion();
+	private final NV21HeaderCache nv21HeaderCache = new NV21HeaderCache();
+	private final Object compositeLock = new Object();
+	private Mat compositeImage = new Mat();
+	private Mat pendingCompositeImage = new Mat();
+	private final Mat displayImage = new Mat();
+	private boolean compositeValid = false;
+	private Mat stageImage = null;
+	private Mat greyscaleFrame = null;
+	private Mat nv21Frame = null;
+	private SessionRecorder sessionRecorder = null;
+	public File sessionDirectory = null;
+	private Thread recognitionThread = null;
 	public Mat errorImage = null;
+	public boolean renderOverlay = true;
+	public boolean verifyTracking = false;
+	public long regionOfInterestFrames = 0;
+	public long regionOfInterestFallbacks = 0;
 
 	public ImageRecognizer(StateController stateController,
 			StateModel stateModel) {
 		this.stateController = stateController;
 		this.stateModel = stateModel;
-		overlay = new Overlay(this.stateModel);
+		overlay = new Overlay(this.stateModel, performanceMonitor);
 	}
 
 	@Override
 	public void onCameraViewStarted(int width, int height) {
+		File file = getColorCalibrationFile();
+		if (file != null && file.exists())
+			try {
+				colorLookupTable.load(file);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 	}
 
 	@Override
 	public void onCameraViewStopped() {
+		stopRecording();
+		stopRecognitionThread();
+		File file = getColorCalibrationFile();
+		if (file != null)
+			try {
+				colorLookupTable.save(file);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		frameMailbox.release();
+		stereoComposer.release();
+		debugRenderer.release();
+		stickerTracker.release();
+		matPool.release();
+		nv21HeaderCache.release();
+	}
+
+	public MatPool getMatPool() {
+		return matPool;
+	}
+
+	public FrameMailbox getFrameMailbox() {
+		return frameMailbox;
+	}
+
+	public PerformanceMonitor getPerformanceMonitor() {
+		return performanceMonitor;
+	}
+
+	public LatticeTracker getLatticeTracker() {
+		return latticeTracker;
+	}
+
+	public StickerTracker getStickerTracker() {
+		return stickerTracker;
+	}
+
+	public ColorLookupTable getColorLookupTable() {
+		return colorLookupTable;
+	}
+
+	public TileColorFusion getTileColorFusion() {
+		return tileColorFusion;
+	}
+
+	private File getColorCalibrationFile() {
+		if (!MenuParam.persistColorCalibration || sessionDirectory == null)
+			return null;
+		return new File(sessionDirectory, "color_calibration.bin");
 	}
 
 	@Override
 	public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
-		Mat image = onFrame(inputFrame);
+		if (MenuParam.recordSession)
+			record(inputFrame);
+		else
+			stopRecording();
+
+		Mat image;
+		if (MenuParam.asyncRecognition) {
+			startRecognitionThread();
+			frameMailbox.publish(inputFrame);
+			image = getCompositeImage(inputFrame);
+		} else {
+			stopRecognitionThread();
+			image = onFrame(inputFrame);
+		}
+
 		if (MenuParam.stereoscopicView) {
-			Size imageSize = image.size();
-			Mat newImage = new Mat();
-			Imgproc.resize(image, newImage, new Size(0, 0), 0.5, 0.5,
-					Imgproc.INTER_LINEAR);
-			Mat m = new Mat(imageSize, image.type());
-			newImage.copyTo(m.submat(newImage.rows() / 2,
-					newImage.rows() * 3 / 2, 0, newImage.cols()));
-			newImage.copyTo(m.submat(newImage.rows() / 2,
-					newImage.rows() * 3 / 2, newImage.cols(),
-					newImage.cols() * 2));
-			return m;
-		} else
-			return image;
+			long time = System.nanoTime();
+			image = stereoComposer.compose(image);
+			performanceMonitor.record(PerformanceStageEnum.STEREO, time);
+		}
+		return image;
 	}
 
-	@SuppressLint("DefaultLocale")
-	private Mat onFrame(CvCameraViewFrame inputFrame) {
-		if (errorImage != null)
-			return errorImage;
+	private void record(CvCameraViewFrame inputFrame) {
+		try {
+			if (sessionRecorder == null) {
+				File directory = sessionDirectory != null ? sessionDirectory
+						: new File(".");
+				sessionRecorder = new SessionRecorder(new File(directory,
+						"session-" + System.currentTimeMillis() + ".ics"),
+						stateModel.cameraParameters);
+			}
+			sessionRecorder.record(inputFrame);
+		} catch (IOException e) {
+			e.printStackTrace();
+			MenuParam.recordSession = false;
+			stopRecording();
+		}
+	}
 
-		Mat image = inputFrame.rgba();
-		Size imageSize = image.size();
+	public void stopRecording() {
+		if (sessionRecorder == null)
+			return;
 
 		try {
-			Face face = new Face();
+			sessionRecorder.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		sessionRecorder = null;
+	}
 
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.DIRECT) {
-				stateModel.activeFace = face;
-				return overlay.drawOverlay(image);
-			}
+	private Mat getCompositeImage(CvCameraViewFrame inputFrame) {
+		synchronized (compositeLock) {
+			if (!compositeValid)
+				return inputFrame.rgba();
+			compositeImage.copyTo(displayImage);
+		}
+		return displayImage;
+	}
 
-			Mat greyscale_image = new Mat();
-			Imgproc.cvtColor(image, greyscale_image, Imgproc.COLOR_BGR2GRAY);
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.GREYSCALE) {
-				stateModel.activeFace = face;
-				image.release();
-				return overlay.drawOverlay(greyscale_image);
-			}
+	private synchronized void startRecognitionThread() {
+		if (recognitionThread != null)
+			return;
 
-			Mat blur_image = new Mat();
-			int kernelSize = (int) MenuParam.gaussianBlurKernelSizeParam.value;
-			kernelSize = kernelSize % 2 == 0 ? kernelSize + 1 : kernelSize;
-			Imgproc.GaussianBlur(greyscale_image, blur_image, new Size(
-					kernelSize, kernelSize), -1, -1);
-			greyscale_image.release();
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.GAUSSIAN) {
-				stateModel.activeFace = face;
-				image.release();
-				return overlay.drawOverlay(blur_image);
-			}
+		frameMailbox.open();
+		recognitionThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					CapturedFrame frame;
+					try {
+						frame = frameMailbox.take();
+					} catch (InterruptedException e) {
+						break;
+					}
+					if (frame == null)
+						break;
 
-			Mat canny_image = new Mat();
-			Imgproc.Canny(blur_image, canny_image,
-					MenuParam.cannyLowerThresholdParam.value,
-					MenuParam.cannyUpperThresholdParam.value, 3, false);
-			blur_image.release();
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.CANNY) {
-				stateModel.activeFace = face;
-				image.release();
-				return overlay.drawOverlay(canny_image);
-			}
+					try {
+						onFrame(frame).copyTo(pendingCompositeImage);
+					} finally {
+						frameMailbox.recycle(frame);
+					}
 
-			Mat dilate_image = new Mat();
-			Imgproc.dilate(canny_image, dilate_image, Imgproc
-					.getStructuringElement(Imgproc.MORPH_RECT, new Size(
-							MenuParam.dilationKernelSizeParam.value,
-							MenuParam.dilationKernelSizeParam.value)));
-			canny_image.release();
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.DILATION) {
-				stateModel.activeFace = face;
-				image.release();
-				return overlay.drawOverlay(dilate_image);
+					synchronized (compositeLock) {
+						Mat tmp = compositeImage;
+						compositeImage = pendingCompositeImage;
+						pendingCompositeImage = tmp;
+						compositeValid = true;
+					}
+				}
 			}
+		}, "ImageRecognizer");
+		recognitionThread.start();
+	}
 
-			List<MatOfPoint> contours = new LinkedList<MatOfPoint>();
-			Mat heirarchy = new Mat();
-			Imgproc.findContours(dilate_image, contours, heirarchy,
-					Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
-			dilate_image.release();
-			heirarchy.release();
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.CONTOUR) {
-				stateModel.activeFace = face;
-				Mat gray_image = new Mat(imageSize, CvType.CV_8UC4);
-				Mat rgba_gray_image = new Mat(imageSize, CvType.CV_8UC4);
-				Imgproc.cvtColor(image, gray_image, Imgproc.COLOR_RGB2GRAY);
-				Imgproc.cvtColor(gray_image, rgba_gray_image,
-						Imgproc.COLOR_GRAY2BGRA, 3);
-				Imgproc.drawContours(rgba_gray_image, contours, -1,
-						ColorTileEnum.YELLOW.cvColor, 3);
-				Core.putText(rgba_gray_image,
-						"Num Contours: " + contours.size(), new Point(500, 50),
-						Constants.FontFace, 4, ColorTileEnum.RED.cvColor, 4);
-				gray_image.release();
-				image.release();
-				return overlay.drawOverlay(rgba_gray_image);
+	private synchronized void stopRecognitionThread() {
+		if (recognitionThread == null)
+			return;
+
+		frameMailbox.close();
+		recognitionThread.interrupt();
+		try {
+			recognitionThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		recognitionThread = null;
+
+		synchronized (compositeLock) {
+			compositeValid = false;
+		}
+	}
+
+	private RhombusBatch detectRhombi(Mat image, Rect roi) {
+		Size imageSize = greyscaleFrame != null ? greyscaleFrame.size()
+				: image.size();
+		int scale = getGeometryScale();
+		Size geometrySize = new Size((int) imageSize.width / scale,
+				(int) imageSize.height / scale);
+		Rect geometryRoi = null, edgeRoi = null, greyscaleRoi = null, cannyRoi = null;
+		int borderType = Core.BORDER_DEFAULT;
+		int morphologyBorderType = Core.BORDER_CONSTANT;
+		if (roi != null) {
+			geometryRoi = new Rect(roi.x / scale, roi.y / scale, roi.width
+					/ scale, roi.height / scale);
+			int left = Math.max(0, geometryRoi.x - 1);
+			int top = Math.max(0, geometryRoi.y - 1);
+			int right = Math.min((int) geometrySize.width, geometryRoi.x
+					+ geometryRoi.width + 1);
+			int bottom = Math.min((int) geometrySize.height, geometryRoi.y
+					+ geometryRoi.height + 1);
+			edgeRoi = new Rect(left, top, right - left, bottom - top);
+			greyscaleRoi = new Rect(left * scale, top * scale, (right - left)
+					* scale, (bottom - top) * scale);
+			cannyRoi = new Rect(geometryRoi.x - left, geometryRoi.y - top,
+					geometryRoi.width, geometryRoi.height);
+			borderType |= Core.BORDER_ISOLATED;
+			morphologyBorderType |= Core.BORDER_ISOLATED;
+		}
+		long time = System.nanoTime();
+
+		Mat greyscale_image;
+		if (greyscaleFrame != null)
+			greyscale_image = matPool.region(greyscaleFrame, greyscaleRoi);
+		else {
+			greyscale_image = matPool.obtain(imageSize, CvType.CV_8UC1,
+					greyscaleRoi);
+			Imgproc.cvtColor(matPool.region(image, greyscaleRoi),
+					greyscale_image, Imgproc.COLOR_BGR2GRAY);
+		}
+		if (MenuParam.imageProcessMode == ImageProcessModeEnum.GREYSCALE) {
+			performanceMonitor.record(PerformanceStageEnum.GREYSCALE, time);
+			stageImage = greyscale_image;
+			return null;
+		}
+
+		boolean debugMode = DebugRenderer
+				.isDebugMode(MenuParam.imageProcessMode);
+		if (debugMode
+				&& debugRenderer.beginFrame(MenuParam.imageProcessMode,
+						imageSize))
+			debugRenderer.setBackground(greyscale_image);
+
+		Mat geometry_image = greyscale_image;
+		if (scale > 1) {
+			geometry_image = matPool.obtain(geometrySize, CvType.CV_8UC1,
+					edgeRoi);
+			Imgproc.resize(greyscale_image, geometry_image,
+					geometry_image.size(), 0, 0, Imgproc.INTER_AREA);
+			matPool.recycle(greyscale_image);
+		}
+		time = performanceMonitor.record(PerformanceStageEnum.GREYSCALE, time);
+
+		Mat blur_image = matPool.obtain(geometrySize, CvType.CV_8UC1,
+				edgeRoi);
+		int kernelSize = (int) MenuParam.gaussianBlurKernelSizeParam.value
+				/ scale;
+		kernelSize = kernelSize % 2 == 0 ? kernelSize + 1 : kernelSize;
+		kernelSize = Math.max(kernelSize, 3);
+		Imgproc.GaussianBlur(geometry_image, blur_image, new Size(
+				kernelSize, kernelSize), -1, -1, borderType);
+		time = performanceMonitor.record(PerformanceStageEnum.GAUSSIAN, time);
+		if (MenuParam.imageProcessMode == ImageProcessModeEnum.GAUSSIAN) {
+			stageImage = getStageImage(blur_image, imageSize);
+			return null;
+		}
+
+		Mat canny_image = matPool.obtain(geometrySize, CvType.CV_8UC1,
+				geometryRoi);
+		Imgproc.Canny(matPool.region(blur_image, cannyRoi), canny_image,
+				MenuParam.cannyLowerThresholdParam.value,
+				MenuParam.cannyUpperThresholdParam.value, 3, false);
+		matPool.recycle(blur_image);
+		time = performanceMonitor.record(PerformanceStageEnum.CANNY, time);
+		if (MenuParam.imageProcessMode == ImageProcessModeEnum.CANNY) {
+			stageImage = getStageImage(canny_image, imageSize);
+			return null;
+		}
+
+		Mat dilate_image = matPool.obtain(geometrySize, CvType.CV_8UC1,
+				geometryRoi);
+		int dilationKernelSize = (int) Math.max(1.0,
+				Math.round(MenuParam.dilationKernelSizeParam.value / scale));
+		Imgproc.dilate(canny_image, dilate_image, matPool
+				.getStructuringElement(Imgproc.MORPH_RECT, dilationKernelSize),
+				MORPHOLOGY_ANCHOR, 1, morphologyBorderType,
+				MORPHOLOGY_BORDER_VALUE);
+		matPool.recycle(canny_image);
+		time = performanceMonitor.record(PerformanceStageEnum.DILATION, time);
+		if (MenuParam.imageProcessMode == ImageProcessModeEnum.DILATION) {
+			stageImage = getStageImage(dilate_image, imageSize);
+			return null;
+		}
+
+		List<MatOfPoint> contours = new LinkedList<MatOfPoint>();
+		Imgproc.findContours(dilate_image, contours, heirarchy,
+				Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE,
+				geometryRoi == null ? new Point() : geometryRoi.tl());
+		matPool.countAllocations(contours.size());
+		matPool.recycle(dilate_image);
+		time = performanceMonitor.record(PerformanceStageEnum.CONTOUR, time);
+
+		double minimumContourArea = MenuParam.minimumContourAreaParam.value
+				/ (scale * scale);
+		double polygonEpsilon = MenuParam.polygonEpsilonParam.value / scale;
+		rhombusBatch.clear();
+		for (MatOfPoint contour : contours) {
+			polygonApproximator.load(contour);
+			double contourArea = polygonApproximator.contourArea();
+			if (contourArea < 0.0)
+				continue;
+
+			if (contourArea < minimumContourArea)
+				continue;
+
+			polygonApproximator.approximate(polygonEpsilon);
+			polygonApproximator.addTo(rhombusBatch, scale);
+		}
+		time = performanceMonitor.record(PerformanceStageEnum.POLYGON, time);
+
+		rhombusBatch.qualify();
+		rhombusBatch.removeOutliers();
+		performanceMonitor.record(PerformanceStageEnum.RHOMBUS, time);
+
+		if (debugMode) {
+			if (debugRenderer.isRendering())
+				switch (MenuParam.imageProcessMode) {
+				case CONTOUR:
+					debugRenderer.drawContours(contours, scale,
+							ColorTileEnum.YELLOW.cvColor);
+					debugRenderer.drawText("Num Contours: " + contours.size(),
+							4);
+					break;
+
+				case POLYGON:
+					debugRenderer.drawPolygons(rhombusBatch,
+							ColorTileEnum.YELLOW.cvColor);
+					debugRenderer.drawText(
+							"Num Polygons: " + rhombusBatch.size, 3);
+					break;
+
+				default:
+					debugRenderer.drawRhombi(rhombusBatch,
+							ColorTileEnum.YELLOW.cvColor);
+					debugRenderer.drawText(
+							"Num Rhombus: " + rhombusBatch.numRhombi, 4);
+					break;
+				}
+			stageImage = debugRenderer.endFrame(renderOverlay);
+		}
+
+		for (MatOfPoint contour : contours)
+			contour.release();
+
+		return rhombusBatch;
+	}
+
+	private Mat getStageImage(Mat stage, Size imageSize) {
+		if (stage.cols() == (int) imageSize.width
+				&& stage.rows() == (int) imageSize.height)
+			return stage;
+
+		Mat display_image = matPool.obtain(imageSize, stage.type());
+		Imgproc.resize(stage, display_image, display_image.size(), 0, 0,
+				Imgproc.INTER_NEAREST);
+		return display_image;
+	}
+
+	private static int getGeometryScale() {
+		if (MenuParam.geometryScale >= 4)
+			return 4;
+		else if (MenuParam.geometryScale >= 2)
+			return 2;
+		else
+			return 1;
+	}
+
+	private Rect getRegionOfInterest(Size imageSize) {
+		if (!MenuParam.regionOfInterestTracking)
+			return null;
+
+		if (MenuParam.imageProcessMode != ImageProcessModeEnum.NORMAL
+				&& MenuParam.imageProcessMode != ImageProcessModeEnum.FACE_DETECT)
+			return null;
+
+		if (stateModel.gestureRecogniztionState != GestureRecogniztionStateEnum.STABLE
+				&& stateModel.gestureRecogniztionState != GestureRecogniztionStateEnum.NEW_STABLE)
+			return null;
+
+		Face lastFace = stateModel.activeFace;
+		if (lastFace == null || !lastFace.solved || !lastFace.lmsResult.valid)
+			return null;
+
+		double xMin = Double.MAX_VALUE, xMax = -Double.MAX_VALUE;
+		double yMin = Double.MAX_VALUE, yMax = -Double.MAX_VALUE;
+		for (int n = 0; n < 3; n += 2)
+			for (int m = 0; m < 3; m += 2) {
+				Point tileCenter = lastFace.getTileCenterInPixels(n, m);
+				xMin = Math.min(xMin, tileCenter.x);
+				xMax = Math.max(xMax, tileCenter.x);
+				yMin = Math.min(yMin, tileCenter.y);
+				yMax = Math.max(yMax, tileCenter.y);
 			}
 
-			List<Rhombus> polygonList = new LinkedList<Rhombus>();
-			for (MatOfPoint contour : contours) {
-				double contourArea = Imgproc.contourArea(contour, true);
-				if (contourArea < 0.0)
-					continue;
+		double padding = Math.max(lastFace.alphaLatticLength,
+				lastFace.betaLatticLength);
+		int scale = getGeometryScale();
+		int left = (int) Math.max(0.0,
+				Math.floor((xMin - padding) / ROI_ALIGNMENT) * ROI_ALIGNMENT);
+		int top = (int) Math.max(0.0,
+				Math.floor((yMin - padding) / ROI_ALIGNMENT) * ROI_ALIGNMENT);
+		int right = (int) Math.min((int) imageSize.width / scale * scale,
+				Math.ceil((xMax + padding) / ROI_ALIGNMENT) * ROI_ALIGNMENT);
+		int bottom = (int) Math.min((int) imageSize.height / scale * scale,
+				Math.ceil((yMax + padding) / ROI_ALIGNMENT) * ROI_ALIGNMENT);
 
-				if (contourArea < MenuParam.minimumContourAreaParam.value)
-					continue;
+		if (right - left < 16 || bottom - top < 16)
+			return null;
+
+		if ((right - left) * (bottom - top) > 0.75 * imageSize.area())
+			return null;
+
+		return new Rect(left, top, right - left, bottom - top);
+	}
+
+	private void verifyTrackedFace(Face trackedFace, Mat image) {
+		RhombusBatch rhombusBatch = detectRhombi(image, null);
+		if (rhombusBatch == null)
+			return;
 
-				MatOfPoint2f contour2f = new MatOfPoint2f();
-				MatOfPoint2f polygone2f = new MatOfPoint2f();
-				MatOfPoint polygon = new MatOfPoint();
+		Face detectedFace = new Face();
+		if (detectedFace.fitLattice(rhombusBatch))
+			stickerTracker.verify(trackedFace, detectedFace);
+	}
 
-				contour.convertTo(contour2f, CvType.CV_32FC2);
-				Imgproc.approxPolyDP(contour2f, polygone2f,
-						MenuParam.polygonEpsilonParam.value, true);
-				polygone2f.convertTo(polygon, CvType.CV_32S);
+	private ColorLookupTable getActiveColorLookupTable() {
+		return MenuParam.colorLookupTable ? colorLookupTable : null;
+	}
 
-				polygonList.add(new Rhombus(polygon));
+	private Face processFace(RhombusBatch rhombusBatch, Mat image) {
+		long time = System.nanoTime();
+		LatticeTracker tracker = MenuParam.latticeTracking ? latticeTracker
+				: null;
+		Face face = null;
+		boolean fitted = false;
+		if (MenuParam.rhombusClusterMode == ClusterModeEnum.NONE
+				|| rhombusClusterer.cluster(rhombusBatch,
+						MenuParam.rhombusClusterSpacing) == 0) {
+			face = new Face();
+			fitted = face.fitLattice(rhombusBatch, rhombusBatch.rhombusIndex,
+					0, rhombusBatch.numRhombi, tracker);
+		} else {
+			int numAttempts = MenuParam.rhombusClusterMode == ClusterModeEnum.BEST ? 1
+					: rhombusClusterer.numClusters;
+			for (int n = 0; n < numAttempts && !fitted; n++) {
+				int c = rhombusClusterer.clusterOrder[n];
+				if (n > 0 && rhombusClusterer.clusterSize[c] < 3)
+					continue;
+
+				Face candidate = new Face();
+				fitted = candidate.fitLattice(rhombusBatch,
+						rhombusClusterer.members,
+						rhombusClusterer.clusterStart[c],
+						rhombusClusterer.clusterSize[c], tracker);
+				if (fitted || face == null)
+					face = candidate;
 			}
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.POLYGON) {
+		}
+		time = performanceMonitor.record(PerformanceStageEnum.FACE_FIT, time);
+
+		if (fitted) {
+			face.recognizeColors(image, nv21Frame, tileColorSampler,
+					getActiveColorLookupTable());
+			performanceMonitor.record(PerformanceStageEnum.COLOR, time);
+		}
+		return face;
+	}
+
+	public Mat onFrame(CvCameraViewFrame inputFrame) {
+		long frameStart = System.nanoTime();
+		Mat image = processFrame(inputFrame);
+		performanceMonitor.recordFrame(frameStart);
+		return image;
+	}
+
+	@SuppressLint("DefaultLocale")
+	private Mat processFrame(CvCameraViewFrame inputFrame) {
+		if (errorImage != null)
+			return errorImage;
+
+		Mat image = null;
+		if (MenuParam.yuvNativeRecognition
+				&& MenuParam.imageProcessMode != ImageProcessModeEnum.DIRECT) {
+			Mat gray = inputFrame.gray();
+			nv21Frame = nv21HeaderCache.getNV21Frame(gray);
+			greyscaleFrame = nv21HeaderCache.getGreyscaleFrame();
+			if (nv21Frame != null && !(inputFrame instanceof CapturedFrame))
+				gray.release();
+		}
+		if (greyscaleFrame == null)
+			image = inputFrame.rgba();
+		Size imageSize = image != null ? image.size() : greyscaleFrame.size();
+		matPool.beginFrame();
+
+		try {
+			Face face = new Face();
+
+			if (MenuParam.imageProcessMode == ImageProcessModeEnum.DIRECT) {
 				stateModel.activeFace = face;
-				Mat gray_image = new Mat(imageSize, CvType.CV_8UC4);
-				Mat rgba_gray_image = new Mat(imageSize, CvType.CV_8UC4);
-				Imgproc.cvtColor(image, gray_image, Imgproc.COLOR_RGB2GRAY);
-				Imgproc.cvtColor(gray_image, rgba_gray_image,
-						Imgproc.COLOR_GRAY2BGRA, 4);
-				for (Rhombus polygon : polygonList)
-					polygon.draw(rgba_gray_image, ColorTileEnum.YELLOW.cvColor);
-				Core.putText(rgba_gray_image,
-						"Num Polygons: " + polygonList.size(), new Point(500,
-								50), Constants.FontFace, 3,
-						ColorTileEnum.RED.cvColor, 4);
-				gray_image.release();
-				image.release();
-				return overlay.drawOverlay(rgba_gray_image);
+				return drawOverlay(inputFrame, image);
 			}
 
-			List<Rhombus> rhombusList = new LinkedList<Rhombus>();
-			for (Rhombus rhombus : polygonList)
-				if (rhombus.qualify())
-					rhombusList.add(rhombus);
-			Rhombus.removedOutlierRhombi(rhombusList);
-			if (MenuParam.imageProcessMode == ImageProcessModeEnum.RHOMBUS) {
-				stateModel.activeFace = face;
-				Mat gray_image = new Mat(imageSize, CvType.CV_8UC4);
-				Mat rgba_gray_image = new Mat(imageSize, CvType.CV_8UC4);
-				Imgproc.cvtColor(image, gray_image, Imgproc.COLOR_RGB2GRAY);
-				Imgproc.cvtColor(gray_image, rgba_gray_image,
-						Imgproc.COLOR_GRAY2BGRA, 4);
-				for (Rhombus rhombus : rhombusList)
-					rhombus.draw(rgba_gray_image, ColorTileEnum.YELLOW.cvColor);
-				Core.putText(rgba_gray_image,
-						"Num Rhombus: " + rhombusList.size(),
-						new Point(500, 50), Constants.FontFace, 4,
-						ColorTileEnum.RED.cvColor, 4);
-				gray_image.release();
-				image.release();
-				return overlay.drawOverlay(rgba_gray_image);
+			latticeTracker.predict();
+			boolean processed = false;
+			boolean tracking = MenuParam.stickerTracking
+					&& MenuParam.imageProcessMode == ImageProcessModeEnum.NORMAL;
+			if (tracking) {
+				long time = System.nanoTime();
+				stickerTracker.setFrame(image, greyscaleFrame);
+				Face trackedFace = stickerTracker.track();
+				time = performanceMonitor.record(PerformanceStageEnum.TRACK,
+						time);
+				if (trackedFace != null) {
+					trackedFace.recognizeColors(image, nv21Frame,
+							tileColorSampler, getActiveColorLookupTable());
+					performanceMonitor.record(PerformanceStageEnum.COLOR, time);
+					if (verifyTracking)
+						verifyTrackedFace(trackedFace, image);
+					face = trackedFace;
+					processed = true;
+				}
+			}
+			boolean tracked = processed;
+
+			Rect regionOfInterest = processed ? null
+					: getRegionOfInterest(imageSize);
+			if (regionOfInterest != null) {
+				regionOfInterestFrames++;
+				face = processFace(detectRhombi(image, regionOfInterest), image);
+				processed = face.solved;
+				if (!processed) {
+					regionOfInterestFallbacks++;
+					face = new Face();
+				}
+			}
+
+			if (!processed) {
+				RhombusBatch rhombusBatch = detectRhombi(image, null);
+				if (rhombusBatch == null) {
+					stateModel.activeFace = face;
+					return renderOverlay ? overlay.drawOverlay(stageImage)
+							: stageImage;
+				}
+				face = processFace(rhombusBatch, image);
 			}
 
-			face.processRhombuses(rhombusList, image);
+			if (face.solved) {
+				if (MenuParam.tileColorFusion)
+					tileColorFusion.fuse(face);
+				latticeTracker.update(face);
+				if (MenuParam.colorLookupTable)
+					colorLookupTable.calibrate(face);
+			} else
+				tileColorFusion.reset();
+			if (tracking)
+				stickerTracker.endFrame(face, tracked);
+
 			if (MenuParam.imageProcessMode == ImageProcessModeEnum.FACE_DETECT) {
 				stateModel.activeFace = face;
-				return overlay.drawOverlay(image);
+				return drawOverlay(inputFrame, image);
+			}
+
+			if (DebugRenderer.isDebugMode(MenuParam.imageProcessMode)) {
+				stateModel.activeFace = face;
+				return renderOverlay ? overlay.drawOverlay(stageImage)
+						: stageImage;
 			}
 
 			if (face.solved) {
+				long time = System.nanoTime();
 				CubePoseEstimator cubePoseEstimator = new CubePoseEstimator();
 				cubePoseEstimator.estimate(face, image, stateModel);
 				stateModel.cubePoseEstimator = cubePoseEstimator;
+				performanceMonitor.record(PerformanceStageEnum.POSE, time);
 			} else
 				stateModel.cubePoseEstimator = null;
 
@@ -274,9 +707,18 @@ public class ImageRecognizer implements CvCameraViewListener2 {
 				Core.putText(errorImage, element.toString(), new Point(50,
 						50 + 50 * i++), Constants.FontFace, 2,
 						ColorTileEnum.WHITE.cvColor, 2);
+		} finally {
+			nv21Frame = null;
+			greyscaleFrame = null;
 		}
 
-		return overlay.drawOverlay(image);
+		return drawOverlay(inputFrame, image);
+	}
+
+	private Mat drawOverlay(CvCameraViewFrame inputFrame, Mat image) {
+		if (!renderOverlay)
+			return image;
+		return overlay.drawOverlay(image != null ? image : inputFrame.rgba());
 	}
 
 }
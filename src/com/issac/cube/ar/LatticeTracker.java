@@ -0,0 +1,137 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+public class LatticeTracker {
+
+	private static final int ORIGIN_X = 0;
+	private static final int ORIGIN_Y = 1;
+	private static final int ALPHA_ANGLE = 2;
+	private static final int BETA_ANGLE = 3;
+	private static final int ALPHA_LENGTH = 4;
+	private static final int BETA_LENGTH = 5;
+	private static final double POSITION_GAIN = 0.5;
+	private static final double VELOCITY_GAIN = 0.1;
+	private static final double CELL_TOLERANCE = 0.3;
+	private static final int MAX_COAST_FRAMES = 3;
+
+	private final double[] value = new double[6];
+	private final double[] velocity = new double[6];
+	private boolean initialized = false;
+	private int framesSinceUpdate = 0;
+	public long predictedFits = 0;
+	public long fastPathFits = 0;
+	public long seededFits = 0;
+	public long seededSolves = 0;
+
+	public synchronized void predict() {
+		if (!initialized)
+			return;
+
+		if (++framesSinceUpdate > MAX_COAST_FRAMES) {
+			reset();
+			return;
+		}
+		for (int i = 0; i < 6; i++)
+			value[i] += velocity[i];
+	}
+
+	public synchronized void update(Face face) {
+		double[] measured = { face.lmsResult.origin.x,
+				face.lmsResult.origin.y, face.alphaAngle, face.betaAngle,
+				face.alphaLatticLength, face.betaLatticLength };
+
+		if (!initialized) {
+			System.arraycopy(measured, 0, value, 0, 6);
+			for (int i = 0; i < 6; i++)
+				velocity[i] = 0.0;
+			initialized = true;
+		} else
+			for (int i = 0; i < 6; i++) {
+				double residual = measured[i] - value[i];
+				value[i] += POSITION_GAIN * residual;
+				velocity[i] += VELOCITY_GAIN * residual;
+			}
+		framesSinceUpdate = 0;
+	}
+
+	public synchronized void recordFit(boolean fastPath) {
+		predictedFits++;
+		if (fastPath)
+			fastPathFits++;
+	}
+
+	public synchronized void recordSeededFit(boolean solved) {
+		seededFits++;
+		if (solved)
+			seededSolves++;
+	}
+
+	public synchronized void seed(Face face) {
+		face.alphaAngle = value[ALPHA_ANGLE];
+		face.betaAngle = value[BETA_ANGLE];
+		face.alphaLatticLength = value[ALPHA_LENGTH];
+		face.betaLatticLength = value[BETA_LENGTH];
+		face.gammaRatio = value[BETA_LENGTH] / value[ALPHA_LENGTH];
+	}
+
+	public synchronized boolean hasPrediction() {
+		return initialized;
+	}
+
+	public synchronized int getPredictedCell(double x, double y) {
+		double alphaX = value[ALPHA_LENGTH] * Math.cos(value[ALPHA_ANGLE]);
+		double alphaY = value[ALPHA_LENGTH] * Math.sin(value[ALPHA_ANGLE]);
+		double betaX = value[BETA_LENGTH] * Math.cos(value[BETA_ANGLE]);
+		double betaY = value[BETA_LENGTH] * Math.sin(value[BETA_ANGLE]);
+		double det = alphaX * betaY - alphaY * betaX;
+		if (Math.abs(det) < 1e-6)
+			return -1;
+
+		double dx = x - value[ORIGIN_X];
+		double dy = y - value[ORIGIN_Y];
+		int n = (int) Math.round((dx * betaY - dy * betaX) / det);
+		int m = (int) Math.round((alphaX * dy - alphaY * dx) / det);
+		if (n < 0 || n > 2 || m < 0 || m > 2)
+			return -1;
+
+		double errorX = dx - n * alphaX - m * betaX;
+		double errorY = dy - n * alphaY - m * betaY;
+		double tolerance = CELL_TOLERANCE
+				* Math.min(value[ALPHA_LENGTH], value[BETA_LENGTH]);
+		if (errorX * errorX + errorY * errorY > tolerance * tolerance)
+			return -1;
+
+		return n * 3 + m;
+	}
+
+	public synchronized void reset() {
+		initialized = false;
+		framesSinceUpdate = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"lattice fast path %d/%d (%.1f%%), seeded fit %d/%d",
+				fastPathFits, predictedFits, predictedFits == 0 ? 0.0
+						: 100.0 * fastPathFits / predictedFits, seededSolves,
+				seededFits);
+	}
+}
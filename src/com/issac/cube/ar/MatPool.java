@@ -0,0 +1,186 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+public class MatPool {
+
+	private final Map<Long, LinkedList<Mat>> freeMatMap = new HashMap<Long, LinkedList<Mat>>();
+	private final Map<Long, Mat> structuringElementMap = new HashMap<Long, Mat>();
+	private final List<Mat> frameMatList = new ArrayList<Mat>();
+	private final Map<Mat, List<Mat>> regionViewMap = new IdentityHashMap<Mat, List<Mat>>();
+	private final Map<Mat, Rect> regionRectMap = new IdentityHashMap<Mat, Rect>();
+	private final Map<Mat, Mat> regionParentMap = new IdentityHashMap<Mat, Mat>();
+	private final Map<Mat, Mat> usedRegionMap = new IdentityHashMap<Mat, Mat>();
+	public long totalAllocations = 0;
+	public int frameAllocations = 0;
+	public int lastFrameAllocations = 0;
+	public long frameCount = 0;
+
+	public synchronized void beginFrame() {
+		Iterator<List<Mat>> iterator = regionViewMap.values().iterator();
+		while (iterator.hasNext()) {
+			List<Mat> viewList = iterator.next();
+			Iterator<Mat> viewIterator = viewList.iterator();
+			while (viewIterator.hasNext()) {
+				Mat view = viewIterator.next();
+				if (usedRegionMap.containsKey(view))
+					continue;
+				view.release();
+				regionRectMap.remove(view);
+				regionParentMap.remove(view);
+				viewIterator.remove();
+			}
+			if (viewList.isEmpty())
+				iterator.remove();
+		}
+		usedRegionMap.clear();
+
+		for (Mat mat : frameMatList)
+			getFreeList(key(mat.rows(), mat.cols(), mat.type())).add(mat);
+		frameMatList.clear();
+
+		lastFrameAllocations = frameAllocations;
+		frameAllocations = 0;
+		frameCount++;
+	}
+
+	public Mat obtain(Size size, int type) {
+		return obtain((int) size.height, (int) size.width, type);
+	}
+
+	public Mat obtain(Size size, int type, Rect region) {
+		return region(obtain(size, type), region);
+	}
+
+	public synchronized Mat region(Mat mat, Rect region) {
+		if (region == null)
+			return mat;
+		List<Mat> viewList = regionViewMap.get(mat);
+		if (viewList == null) {
+			viewList = new ArrayList<Mat>(2);
+			regionViewMap.put(mat, viewList);
+		}
+		for (Mat view : viewList)
+			if (region.equals(regionRectMap.get(view))) {
+				usedRegionMap.put(view, view);
+				return view;
+			}
+
+		Mat view = mat.submat(region);
+		viewList.add(view);
+		regionRectMap.put(view, region.clone());
+		regionParentMap.put(view, mat);
+		usedRegionMap.put(view, view);
+		totalAllocations++;
+		frameAllocations++;
+		return view;
+	}
+
+	public synchronized Mat obtain(int rows, int cols, int type) {
+		LinkedList<Mat> freeList = getFreeList(key(rows, cols, type));
+		Mat mat = freeList.poll();
+		if (mat == null) {
+			mat = new Mat(rows, cols, type);
+			totalAllocations++;
+			frameAllocations++;
+		}
+		frameMatList.add(mat);
+		return mat;
+	}
+
+	public synchronized void countAllocations(int count) {
+		totalAllocations += count;
+		frameAllocations += count;
+	}
+
+	public synchronized void recycle(Mat mat) {
+		Mat parent = regionParentMap.get(mat);
+		if (parent != null)
+			mat = parent;
+		if (mat == null || !frameMatList.remove(mat))
+			return;
+		getFreeList(key(mat.rows(), mat.cols(), mat.type())).add(mat);
+	}
+
+	public synchronized Mat getStructuringElement(int shape, int kernelSize) {
+		long key = ((long) shape << 32) | kernelSize;
+		Mat element = structuringElementMap.get(key);
+		if (element == null) {
+			element = Imgproc.getStructuringElement(shape, new Size(kernelSize,
+					kernelSize));
+			structuringElementMap.put(key, element);
+			totalAllocations++;
+			frameAllocations++;
+		}
+		return element;
+	}
+
+	public synchronized int getPooledCount() {
+		int count = frameMatList.size();
+		for (LinkedList<Mat> freeList : freeMatMap.values())
+			count += freeList.size();
+		return count;
+	}
+
+	public synchronized void release() {
+		for (List<Mat> viewList : regionViewMap.values())
+			for (Mat view : viewList)
+				view.release();
+		regionViewMap.clear();
+		regionRectMap.clear();
+		regionParentMap.clear();
+		usedRegionMap.clear();
+		for (Mat mat : frameMatList)
+			mat.release();
+		frameMatList.clear();
+		for (LinkedList<Mat> freeList : freeMatMap.values())
+			for (Mat mat : freeList)
+				mat.release();
+		freeMatMap.clear();
+		for (Mat element : structuringElementMap.values())
+			element.release();
+		structuringElementMap.clear();
+	}
+
+	private LinkedList<Mat> getFreeList(long key) {
+		LinkedList<Mat> freeList = freeMatMap.get(key);
+		if (freeList == null) {
+			freeList = new LinkedList<Mat>();
+			freeMatMap.put(key, freeList);
+		}
+		return freeList;
+	}
+
+	private static long key(int rows, int cols, int type) {
+		return ((long) rows << 40) | ((long) cols << 16) | type;
+	}
+}
@@ -32,7 +32,9 @@ import android.widget.TextView;
 
 import com.issac.cube.R;
 import com.issac.cube.ar.Constants.AnnotationModeEnum;
+import com.issac.cube.ar.Constants.ClusterModeEnum;
 import com.issac.cube.ar.Constants.ImageProcessModeEnum;
+import com.issac.cube.ar.Constants.LatticeFitModeEnum;
 
 public class MenuParam {
 
@@ -40,6 +42,23 @@ public class MenuParam {
 	public static boolean faceOverlayDisplay = true;
 	public static boolean pilotCubeDisplay = true;
 	public static boolean stereoscopicView = false;
+	public static boolean asyncRecognition = false;
+	public static boolean regionOfInterestTracking = false;
+	public static boolean yuvNativeRecognition = false;
+	public static int geometryScale = 1;
+	public static int debugRenderInterval = 3;
+	public static ClusterModeEnum rhombusClusterMode = ClusterModeEnum.NONE;
+	public static double rhombusClusterSpacing = 2.5;
+	public static LatticeFitModeEnum latticeFitMode = LatticeFitModeEnum.ITERATIVE;
+	public static int ransacIterationBudget = 64;
+	public static boolean latticeTracking = false;
+	public static boolean stickerTracking = false;
+	public static int stickerTrackingInterval = 10;
+	public static boolean colorLookupTable = false;
+	public static boolean persistColorCalibration = false;
+	public static boolean tileColorFusion = false;
+	public static boolean colorModel = false;
+	public static boolean recordSession = false;
 	public static ImageProcessModeEnum imageProcessMode = ImageProcessModeEnum.NORMAL;
 	public static AnnotationModeEnum annotationMode = AnnotationModeEnum.NORMAL;
 
@@ -66,6 +85,54 @@ public class MenuParam {
 	public static RubikMenuParam threeDDepthParam = new RubikMenuParam(+0.0,
 			+100.0, +10.0);
 
+	public static RubikMenuParam[] getRecognitionParams() {
+		return new RubikMenuParam[] { gaussianBlurKernelSizeParam,
+				cannyUpperThresholdParam, cannyLowerThresholdParam,
+				dilationKernelSizeParam, minimumContourAreaParam,
+				polygonEpsilonParam, minimumRhombusAreaParam,
+				maximumRhombusAreaParam, angleOutlierThresholdPaaram,
+				faceLmsThresholdParam, threeDDepthParam };
+	}
+
+	public static int[] getRecognitionFlags() {
+		return new int[] { imageProcessMode.ordinal(), geometryScale,
+				regionOfInterestTracking ? 1 : 0, yuvNativeRecognition ? 1 : 0,
+				rhombusClusterMode.ordinal(), latticeFitMode.ordinal(),
+				ransacIterationBudget, latticeTracking ? 1 : 0,
+				stickerTracking ? 1 : 0, stickerTrackingInterval,
+				colorLookupTable ? 1 : 0, tileColorFusion ? 1 : 0,
+				colorModel ? 1 : 0 };
+	}
+
+	public static void setRecognitionFlags(int[] flags) {
+		if (flags.length > 0)
+			imageProcessMode = ImageProcessModeEnum.values()[flags[0]];
+		if (flags.length > 1)
+			geometryScale = flags[1];
+		if (flags.length > 2)
+			regionOfInterestTracking = flags[2] != 0;
+		if (flags.length > 3)
+			yuvNativeRecognition = flags[3] != 0;
+		if (flags.length > 4)
+			rhombusClusterMode = ClusterModeEnum.values()[flags[4]];
+		if (flags.length > 5)
+			latticeFitMode = LatticeFitModeEnum.values()[flags[5]];
+		if (flags.length > 6)
+			ransacIterationBudget = flags[6];
+		if (flags.length > 7)
+			latticeTracking = flags[7] != 0;
+		if (flags.length > 8)
+			stickerTracking = flags[8] != 0;
+		if (flags.length > 9)
+			stickerTrackingInterval = flags[9];
+		if (flags.length > 10)
+			colorLookupTable = flags[10] != 0;
+		if (flags.length > 11)
+			tileColorFusion = flags[11] != 0;
+		if (flags.length > 12)
+			colorModel = flags[12] != 0;
+	}
+
 	public static class RubikMenuParam {
 		public RubikMenuParam(double min, double max, double value) {
 			this.min = min;
@@ -0,0 +1,80 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.core.Mat;
+
+public class NV21HeaderCache {
+
+	private static final int NUM_SLOTS = 2;
+
+	private final long[] addressArray = new long[NUM_SLOTS];
+	private final Mat[] nv21FrameArray = new Mat[NUM_SLOTS];
+	private final Mat[] greyscaleFrameArray = new Mat[NUM_SLOTS];
+	private int currentSlot = -1;
+	private int nextSlot = 0;
+	public long allocations = 0;
+
+	public synchronized Mat getNV21Frame(Mat gray) {
+		long address = gray.dataAddr();
+		for (int i = 0; i < NUM_SLOTS; i++)
+			if (nv21FrameArray[i] != null && addressArray[i] == address
+					&& greyscaleFrameArray[i].cols() == gray.cols()
+					&& greyscaleFrameArray[i].rows() == gray.rows()) {
+				currentSlot = i;
+				return nv21FrameArray[i];
+			}
+
+		Mat nv21 = Util.getNV21Frame(gray);
+		if (nv21 == null) {
+			currentSlot = -1;
+			return null;
+		}
+
+		int slot = nextSlot;
+		nextSlot = (nextSlot + 1) % NUM_SLOTS;
+		releaseSlot(slot);
+		addressArray[slot] = address;
+		nv21FrameArray[slot] = nv21;
+		greyscaleFrameArray[slot] = nv21.submat(0, gray.rows(), 0,
+				gray.cols());
+		allocations += 2;
+		currentSlot = slot;
+		return nv21;
+	}
+
+	public synchronized Mat getGreyscaleFrame() {
+		return currentSlot < 0 ? null : greyscaleFrameArray[currentSlot];
+	}
+
+	private void releaseSlot(int slot) {
+		if (nv21FrameArray[slot] != null)
+			nv21FrameArray[slot].release();
+		if (greyscaleFrameArray[slot] != null)
+			greyscaleFrameArray[slot].release();
+		nv21FrameArray[slot] = null;
+		greyscaleFrameArray[slot] = null;
+	}
+
+	public synchronized void release() {
+		for (int i = 0; i < NUM_SLOTS; i++)
+			releaseSlot(i);
+		currentSlot = -1;
+	}
+}
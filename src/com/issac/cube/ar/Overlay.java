@@ -32,17 +32,21 @@ import com.issac.cube.ar.Constants.AppStateEnum;
 import com.issac.cube.ar.Constants.ColorTileEnum;
 import com.issac.cube.ar.Constants.FaceNameEnum;
 import com.issac.cube.ar.Constants.GestureRecogniztionStateEnum;
+import com.issac.cube.ar.Constants.PerformanceStageEnum;
 
 public class Overlay {
 
 	private final StateModel stateModel;
+	private final PerformanceMonitor performanceMonitor;
 	Mat overlay;
 
-	public Overlay(StateModel stateModel) {
+	public Overlay(StateModel stateModel, PerformanceMonitor performanceMonitor) {
 		this.stateModel = stateModel;
+		this.performanceMonitor = performanceMonitor;
 	}
 
 	public Mat drawOverlay(Mat image) {
+		long time = System.nanoTime();
 		Face face = stateModel.activeFace;
 
 		if (MenuParam.faceOverlayDisplay && face != null)
@@ -79,10 +83,15 @@ public class Overlay {
 				drawTileColorMetrics(image, cubeFace, false);
 			break;
 
+		case PERFORMANCE:
+			drawPerformanceMetrics(image);
+			break;
+
 		case NORMAL:
 			break;
 		}
 
+		performanceMonitor.record(PerformanceStageEnum.OVERLAY, time);
 		return image;
 	}
 
@@ -94,7 +103,7 @@ public class Overlay {
 				color1 = ColorTileEnum.GREEN.cvColor;
 			else
 				color1 = ColorTileEnum.YELLOW.cvColor;
-		else if (face.rhombusList.size() >= 3 && face.lmsResult.valid)
+		else if (face.numRhombi >= 3 && face.lmsResult.valid)
 			color1 = ColorTileEnum.ORANGE.cvColor;
 
 		Scalar color2 = ColorTileEnum.BLACK.cvColor;
@@ -135,12 +144,11 @@ public class Overlay {
 							face.observedTileArray[n][m].cvColor, -1);
 		else if (stateModel.appState == AppStateEnum.ROTATE_FACE
 				|| stateModel.appState == AppStateEnum.WAITING_MOVE) {
-			center.x -= 150.0;
-			center.y += 100.0;
 			Core.putText(
 					img,
 					stateModel.solutionResultsArray[stateModel.solutionResultIndex],
-					center, Constants.FontFace, 18,
+					new Point(center.x - 150.0, center.y + 100.0),
+					Constants.FontFace, 18,
 					ColorTileEnum.WHITE.cvColor, 30);
 		}
 	}
@@ -222,6 +230,27 @@ public class Overlay {
 				ColorTileEnum.WHITE.cvColor, 2);
 	}
 
+	private void drawPerformanceMetrics(Mat image) {
+		Core.putText(image, String.format("FPS = %4.1f",
+				performanceMonitor.getFramesPerSecond()), new Point(20, 50),
+				Constants.FontFace, 2, ColorTileEnum.WHITE.cvColor, 2);
+		Core.putText(image,
+				String.format("%-9s%6s%6s%6s", "ms", "p50", "p95", "p99"),
+				new Point(20, 100), Constants.FontFace, 1.5,
+				ColorTileEnum.YELLOW.cvColor, 2);
+
+		int y = 140;
+		for (PerformanceStageEnum stage : PerformanceStageEnum.values()) {
+			Core.putText(image, String.format("%-9s%6.1f%6.1f%6.1f", stage,
+					performanceMonitor.getPercentileMillis(stage, 50),
+					performanceMonitor.getPercentileMillis(stage, 95),
+					performanceMonitor.getPercentileMillis(stage, 99)),
+					new Point(20, y), Constants.FontFace, 1.5,
+					ColorTileEnum.WHITE.cvColor, 2);
+			y += 40;
+		}
+	}
+
 	private void drawColorGrid(Mat image, boolean single) {
 		Core.rectangle(image, new Point(0, 0), new Point(570, 720),
 				ColorTileEnum.BLACK.cvColor, -1);
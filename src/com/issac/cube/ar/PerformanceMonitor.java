@@ -0,0 +1,103 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.util.Arrays;
+
+import com.issac.cube.ar.Constants.PerformanceStageEnum;
+
+public class PerformanceMonitor {
+
+	public static final int WINDOW_SIZE = 128;
+
+	private final long[][] sampleArray = new long[PerformanceStageEnum.values().length][WINDOW_SIZE];
+	private final int[] sampleCount = new int[PerformanceStageEnum.values().length];
+	private final long[] frameTimeArray = new long[WINDOW_SIZE];
+	private int frameTimeCount = 0;
+	private final long[] sortBuffer = new long[WINDOW_SIZE];
+
+	public synchronized long record(PerformanceStageEnum stage, long startNanos) {
+		long now = System.nanoTime();
+		int s = stage.ordinal();
+		sampleArray[s][sampleCount[s]++ % WINDOW_SIZE] = now - startNanos;
+		if (sampleCount[s] == 2 * WINDOW_SIZE)
+			sampleCount[s] = WINDOW_SIZE;
+		return now;
+	}
+
+	public synchronized long recordFrame(long startNanos) {
+		long now = record(PerformanceStageEnum.FRAME, startNanos);
+		frameTimeArray[frameTimeCount++ % WINDOW_SIZE] = now;
+		if (frameTimeCount == 2 * WINDOW_SIZE)
+			frameTimeCount = WINDOW_SIZE;
+		return now;
+	}
+
+	public synchronized int getSampleCount(PerformanceStageEnum stage) {
+		return Math.min(sampleCount[stage.ordinal()], WINDOW_SIZE);
+	}
+
+	public synchronized double getPercentileMillis(PerformanceStageEnum stage,
+			double percentile) {
+		int n = getSampleCount(stage);
+		if (n == 0)
+			return 0.0;
+
+		System.arraycopy(sampleArray[stage.ordinal()], 0, sortBuffer, 0, n);
+		Arrays.sort(sortBuffer, 0, n);
+		int rank = (int) Math.ceil(percentile / 100.0 * n) - 1;
+		rank = Math.max(0, Math.min(n - 1, rank));
+		return sortBuffer[rank] / 1.0e6;
+	}
+
+	public synchronized double getFramesPerSecond() {
+		int n = Math.min(frameTimeCount, WINDOW_SIZE);
+		if (n < 2)
+			return 0.0;
+
+		long newest = frameTimeArray[(frameTimeCount - 1) % WINDOW_SIZE];
+		long oldest = frameTimeArray[(frameTimeCount - n) % WINDOW_SIZE];
+		if (newest <= oldest)
+			return 0.0;
+		return (n - 1) * 1.0e9 / (newest - oldest);
+	}
+
+	public synchronized void reset() {
+		Arrays.fill(sampleCount, 0);
+		frameTimeCount = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("fps=%.1f\n", getFramesPerSecond()));
+		sb.append(String.format("%-10s %5s %8s %8s %8s\n", "stage", "n",
+				"p50", "p95", "p99"));
+		for (PerformanceStageEnum stage : PerformanceStageEnum.values()) {
+			if (getSampleCount(stage) == 0)
+				continue;
+			sb.append(String.format("%-10s %5d %6.2fms %6.2fms %6.2fms\n",
+					stage, getSampleCount(stage),
+					getPercentileMillis(stage, 50),
+					getPercentileMillis(stage, 95),
+					getPercentileMillis(stage, 99)));
+		}
+		return sb.toString();
+	}
+}
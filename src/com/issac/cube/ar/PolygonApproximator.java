@@ -0,0 +1,205 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.core.MatOfPoint;
+
+public class PolygonApproximator {
+
+	private int[] contour = new int[512];
+	private int[] polygonX = new int[256];
+	private int[] polygonY = new int[256];
+	private int[] stack = new int[512];
+	public int numContourPoints = 0;
+	public int numPolygonPoints = 0;
+
+	public void load(MatOfPoint contourMat) {
+		numContourPoints = (int) contourMat.total();
+		if (contour.length < 2 * numContourPoints)
+			contour = new int[4 * numContourPoints];
+		if (numContourPoints > 0)
+			contourMat.get(0, 0, contour);
+		numPolygonPoints = 0;
+	}
+
+	public void load(int[] xy, int numPoints) {
+		numContourPoints = numPoints;
+		if (contour.length < 2 * numContourPoints)
+			contour = new int[4 * numContourPoints];
+		System.arraycopy(xy, 0, contour, 0, 2 * numPoints);
+		numPolygonPoints = 0;
+	}
+
+	public double contourArea() {
+		if (numContourPoints == 0)
+			return 0.0;
+
+		double area = 0.0;
+		double prevX = contour[2 * numContourPoints - 2];
+		double prevY = contour[2 * numContourPoints - 1];
+		for (int i = 0; i < numContourPoints; i++) {
+			double x = contour[2 * i];
+			double y = contour[2 * i + 1];
+			area += prevX * y - prevY * x;
+			prevX = x;
+			prevY = y;
+		}
+		return area * 0.5;
+	}
+
+	public int approximate(double epsilon) {
+		int count = numContourPoints;
+		numPolygonPoints = 0;
+		if (count == 0)
+			return 0;
+
+		if (polygonX.length < count) {
+			polygonX = new int[2 * count];
+			polygonY = new int[2 * count];
+		}
+		if (stack.length < 2 * count + 4)
+			stack = new int[4 * count + 4];
+
+		double eps = epsilon * epsilon;
+		int pos = 0;
+		int rightStart = 0;
+		boolean withinEpsilon = false;
+		for (int i = 0; i < 3; i++) {
+			double maxDist = 0.0;
+			pos = (pos + rightStart) % count;
+			int startX = contour[2 * pos];
+			int startY = contour[2 * pos + 1];
+			for (int j = 1; j < count; j++) {
+				int p = (pos + j) % count;
+				double dx = contour[2 * p] - startX;
+				double dy = contour[2 * p + 1] - startY;
+				double dist = dx * dx + dy * dy;
+				if (dist > maxDist) {
+					maxDist = dist;
+					rightStart = j;
+				}
+			}
+			withinEpsilon = maxDist <= eps;
+		}
+
+		int top = 0;
+		if (withinEpsilon)
+			addPoint(pos);
+		else {
+			int split = (rightStart + pos) % count;
+			stack[top++] = split;
+			stack[top++] = pos;
+			stack[top++] = pos;
+			stack[top++] = split;
+		}
+
+		while (top > 0) {
+			int end = stack[--top];
+			int start = stack[--top];
+			int startX = contour[2 * start];
+			int startY = contour[2 * start + 1];
+
+			int split = start;
+			pos = (start + 1) % count;
+			if (pos != end) {
+				double dx = contour[2 * end] - startX;
+				double dy = contour[2 * end + 1] - startY;
+				double maxDist = 0.0;
+				while (pos != end) {
+					double dist = Math.abs((contour[2 * pos + 1] - startY)
+							* dx - (contour[2 * pos] - startX) * dy);
+					if (dist > maxDist) {
+						maxDist = dist;
+						split = pos;
+					}
+					pos = (pos + 1) % count;
+				}
+				withinEpsilon = maxDist * maxDist <= eps * (dx * dx + dy * dy);
+			} else
+				withinEpsilon = true;
+
+			if (withinEpsilon)
+				addPoint(start);
+			else {
+				stack[top++] = split;
+				stack[top++] = end;
+				stack[top++] = start;
+				stack[top++] = split;
+			}
+		}
+
+		removeCollinearPoints(eps);
+		return numPolygonPoints;
+	}
+
+	public int addTo(RhombusBatch batch, int scale) {
+		return batch.add(polygonX, polygonY, numPolygonPoints, scale);
+	}
+
+	private void addPoint(int index) {
+		polygonX[numPolygonPoints] = contour[2 * index];
+		polygonY[numPolygonPoints] = contour[2 * index + 1];
+		numPolygonPoints++;
+	}
+
+	private void removeCollinearPoints(double eps) {
+		int count = numPolygonPoints;
+		int newCount = count;
+		int pos = count - 1;
+		int startX = polygonX[pos];
+		int startY = polygonY[pos];
+		pos = 0;
+		int writePos = 0;
+		int x = polygonX[pos];
+		int y = polygonY[pos];
+		pos = (pos + 1) % count;
+
+		for (int i = 0; i < count && newCount > 2; i++) {
+			int endX = polygonX[pos];
+			int endY = polygonY[pos];
+			pos = (pos + 1) % count;
+
+			double dx = endX - startX;
+			double dy = endY - startY;
+			double dist = Math.abs((x - startX) * dy - (y - startY) * dx);
+			double innerProduct = (double) (x - startX) * (endX - x)
+					+ (double) (y - startY) * (endY - y);
+
+			if (dist * dist <= 0.5 * eps * (dx * dx + dy * dy) && dx != 0
+					&& dy != 0 && innerProduct >= 0) {
+				newCount--;
+				polygonX[writePos] = startX = endX;
+				polygonY[writePos] = startY = endY;
+				writePos = (writePos + 1) % count;
+				x = polygonX[pos];
+				y = polygonY[pos];
+				pos = (pos + 1) % count;
+				i++;
+				continue;
+			}
+			polygonX[writePos] = startX = x;
+			polygonY[writePos] = startY = y;
+			writePos = (writePos + 1) % count;
+			x = endX;
+			y = endY;
+		}
+
+		numPolygonPoints = newCount;
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+
+public class RhombusBatch {
+
+	public int size = 0;
+	public int[] vertexOffset = new int[64];
+	public int[] vertexCount = new int[64];
+	public double[] centerX = new double[64];
+	public double[] centerY = new double[64];
+	public double[] area = new double[64];
+	public double[] alphaAngle = new double[64];
+	public double[] betaAngle = new double[64];
+	public double[] alphaLength = new double[64];
+	public double[] betaLength = new double[64];
+	public double[] gammaRatio = new double[64];
+
+	public int numVertices = 0;
+	public double[] vertexX = new double[256];
+	public double[] vertexY = new double[256];
+
+	public int numRhombi = 0;
+	public int[] rhombusIndex = new int[64];
+
+	private double[] selectBuffer = new double[64];
+
+	public void clear() {
+		size = 0;
+		numVertices = 0;
+		numRhombi = 0;
+	}
+
+	public int add(int[] x, int[] y, int numPoints, int scale) {
+		int i = allocate(numPoints);
+		double sumX = 0.0, sumY = 0.0;
+		for (int j = 0; j < numPoints; j++) {
+			vertexX[numVertices + j] = x[j] * scale;
+			vertexY[numVertices + j] = y[j] * scale;
+			sumX += vertexX[numVertices + j];
+			sumY += vertexY[numVertices + j];
+		}
+		return commit(i, numPoints, sumX, sumY);
+	}
+
+	public int add(Point[] polygon) {
+		int i = allocate(polygon.length);
+		double sumX = 0.0, sumY = 0.0;
+		for (int j = 0; j < polygon.length; j++) {
+			vertexX[numVertices + j] = polygon[j].x;
+			vertexY[numVertices + j] = polygon[j].y;
+			sumX += polygon[j].x;
+			sumY += polygon[j].y;
+		}
+		return commit(i, polygon.length, sumX, sumY);
+	}
+
+	public void qualify() {
+		numRhombi = 0;
+		for (int i = 0; i < size; i++)
+			if (qualify(i))
+				rhombusIndex[numRhombi++] = i;
+	}
+
+	private boolean qualify(int i) {
+		if (vertexCount[i] != 4)
+			return false;
+
+		int o = vertexOffset[i];
+		if (!isConvex(o, 4))
+			return false;
+
+		double a = 0.0;
+		for (int j = 0, k = 3; j < 4; k = j++)
+			a += vertexX[o + k] * vertexY[o + j] - vertexY[o + k]
+					* vertexX[o + j];
+		area[i] = Math.abs(a) * 0.5;
+		if (area[i] < MenuParam.minimumRhombusAreaParam.value
+				|| area[i] > MenuParam.maximumRhombusAreaParam.value)
+			return false;
+
+		int top = 0;
+		for (int j = 1; j < 4; j++)
+			if (vertexY[o + j] < vertexY[o + top])
+				top = j;
+		rotate(vertexX, o, top);
+		rotate(vertexY, o, top);
+
+		double x0 = vertexX[o], x1 = vertexX[o + 1], x2 = vertexX[o + 2], x3 = vertexX[o + 3];
+		double y0 = vertexY[o], y1 = vertexY[o + 1], y2 = vertexY[o + 2], y3 = vertexY[o + 3];
+		if (x1 < x3)
+			return false;
+
+		alphaAngle[i] = 180.0 / Math.PI
+				* Math.atan2(y1 - y0 + (y2 - y3), x1 - x0 + (x2 - x3));
+		betaAngle[i] = 180.0 / Math.PI
+				* Math.atan2(y2 - y1 + (y3 - y0), x2 - x1 + (x3 - x0));
+
+		alphaLength[i] = (line(x0, y0, x1, y1) + line(x3, y3, x2, y2)) / 2;
+		betaLength[i] = (line(x0, y0, x3, y3) + line(x1, y1, x2, y2)) / 2;
+		gammaRatio[i] = betaLength[i] / alphaLength[i];
+
+		return true;
+	}
+
+	public void removeOutliers() {
+		final double angleOutlierTolerance = MenuParam.angleOutlierThresholdPaaram.value;
+
+		if (numRhombi < 3)
+			return;
+
+		int midIndex = numRhombi / 2;
+		double medianAlphaAngle = select(alphaAngle, midIndex);
+		double medianBetaAngle = select(betaAngle, midIndex);
+
+		int count = 0;
+		for (int j = 0; j < numRhombi; j++) {
+			int i = rhombusIndex[j];
+			if (Math.abs(alphaAngle[i] - medianAlphaAngle) <= angleOutlierTolerance
+					&& Math.abs(betaAngle[i] - medianBetaAngle) <= angleOutlierTolerance)
+				rhombusIndex[count++] = i;
+		}
+		numRhombi = count;
+	}
+
+	public void draw(Mat image, int i, Scalar color) {
+		int o = vertexOffset[i];
+		int n = vertexCount[i];
+		for (int j = 0, k = n - 1; j < n; k = j++)
+			Core.line(image, new Point(vertexX[o + k], vertexY[o + k]),
+					new Point(vertexX[o + j], vertexY[o + j]), color, 3);
+	}
+
+	private boolean isConvex(int o, int n) {
+		int orientation = 0;
+		double currentX = vertexX[o + n - 1];
+		double currentY = vertexY[o + n - 1];
+		double dx0 = currentX - vertexX[o + n - 2];
+		double dy0 = currentY - vertexY[o + n - 2];
+		for (int j = 0; j < n; j++) {
+			double dx = vertexX[o + j] - currentX;
+			double dy = vertexY[o + j] - currentY;
+			double dxdy0 = dx * dy0;
+			double dydx0 = dy * dx0;
+			orientation |= dydx0 > dxdy0 ? 1 : dydx0 < dxdy0 ? 2 : 3;
+			if (orientation == 3)
+				return false;
+			dx0 = dx;
+			dy0 = dy;
+			currentX = vertexX[o + j];
+			currentY = vertexY[o + j];
+		}
+		return true;
+	}
+
+	private static double line(double ax, double ay, double bx, double by) {
+		return Math.sqrt((ax - bx) * (ax - bx) + (ay - by) * (ay - by));
+	}
+
+	private static void rotate(double[] vertex, int o, int first) {
+		for (int j = 0; j < first; j++) {
+			double tmp = vertex[o];
+			vertex[o] = vertex[o + 1];
+			vertex[o + 1] = vertex[o + 2];
+			vertex[o + 2] = vertex[o + 3];
+			vertex[o + 3] = tmp;
+		}
+	}
+
+	private double select(double[] values, int k) {
+		double[] buffer = selectBuffer;
+		for (int j = 0; j < numRhombi; j++)
+			buffer[j] = values[rhombusIndex[j]];
+
+		int left = 0;
+		int right = numRhombi - 1;
+		while (left < right) {
+			double pivot = buffer[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (buffer[i] < pivot)
+					i++;
+				while (buffer[j] > pivot)
+					j--;
+				if (i <= j) {
+					double tmp = buffer[i];
+					buffer[i] = buffer[j];
+					buffer[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				break;
+		}
+		return buffer[k];
+	}
+
+	private int allocate(int numPoints) {
+		if (size == centerX.length) {
+			int capacity = 2 * size;
+			vertexOffset = grow(vertexOffset, capacity);
+			vertexCount = grow(vertexCount, capacity);
+			rhombusIndex = grow(rhombusIndex, capacity);
+			centerX = grow(centerX, capacity);
+			centerY = grow(centerY, capacity);
+			area = grow(area, capacity);
+			alphaAngle = grow(alphaAngle, capacity);
+			betaAngle = grow(betaAngle, capacity);
+			alphaLength = grow(alphaLength, capacity);
+			betaLength = grow(betaLength, capacity);
+			gammaRatio = grow(gammaRatio, capacity);
+			selectBuffer = new double[capacity];
+		}
+		if (numVertices + numPoints > vertexX.length) {
+			int capacity = 2 * (numVertices + numPoints);
+			vertexX = grow(vertexX, capacity);
+			vertexY = grow(vertexY, capacity);
+		}
+		return size;
+	}
+
+	private int commit(int i, int numPoints, double sumX, double sumY) {
+		vertexOffset[i] = numVertices;
+		vertexCount[i] = numPoints;
+		centerX[i] = sumX / numPoints;
+		centerY[i] = sumY / numPoints;
+		numVertices += numPoints;
+		size++;
+		return i;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] result = new int[capacity];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private static double[] grow(double[] array, int capacity) {
+		double[] result = new double[capacity];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+}
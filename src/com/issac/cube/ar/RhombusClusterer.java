@@ -0,0 +1,160 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+public class RhombusClusterer {
+
+	private int[] cellX = new int[64];
+	private int[] cellY = new int[64];
+	private double[] size = new double[64];
+	private int[] parent = new int[64];
+	private int[] next = new int[64];
+	private int[] tableHead = new int[128];
+	private int[] clusterOf = new int[64];
+
+	public int numClusters = 0;
+	public int[] clusterStart = new int[64];
+	public int[] clusterSize = new int[64];
+	public int[] clusterOrder = new int[64];
+	public int[] members = new int[64];
+
+	public int cluster(RhombusBatch rhombusBatch, double spacingFactor) {
+		int n = rhombusBatch.numRhombi;
+		numClusters = 0;
+		if (n == 0)
+			return 0;
+		ensureCapacity(n);
+
+		double maxSize = 0.0;
+		for (int j = 0; j < n; j++) {
+			size[j] = Math.sqrt(rhombusBatch.area[rhombusBatch.rhombusIndex[j]]);
+			maxSize = Math.max(maxSize, size[j]);
+			parent[j] = j;
+		}
+		double cellSize = Math.max(1.0, spacingFactor * maxSize);
+
+		int mask = tableHead.length - 1;
+		for (int h = 0; h <= mask; h++)
+			tableHead[h] = -1;
+		for (int j = 0; j < n; j++) {
+			int i = rhombusBatch.rhombusIndex[j];
+			cellX[j] = (int) Math.floor(rhombusBatch.centerX[i] / cellSize);
+			cellY[j] = (int) Math.floor(rhombusBatch.centerY[i] / cellSize);
+			int h = hash(cellX[j], cellY[j]) & mask;
+			next[j] = tableHead[h];
+			tableHead[h] = j;
+		}
+
+		for (int j = 0; j < n; j++) {
+			int i = rhombusBatch.rhombusIndex[j];
+			for (int dx = -1; dx <= 1; dx++)
+				for (int dy = -1; dy <= 1; dy++) {
+					int x = cellX[j] + dx;
+					int y = cellY[j] + dy;
+					for (int k = tableHead[hash(x, y) & mask]; k >= 0; k = next[k]) {
+						if (k <= j || cellX[k] != x || cellY[k] != y)
+							continue;
+						int l = rhombusBatch.rhombusIndex[k];
+						double distX = rhombusBatch.centerX[l]
+								- rhombusBatch.centerX[i];
+						double distY = rhombusBatch.centerY[l]
+								- rhombusBatch.centerY[i];
+						double limit = spacingFactor * Math.max(size[j], size[k]);
+						if (distX * distX + distY * distY <= limit * limit)
+							union(j, k);
+					}
+				}
+		}
+
+		for (int j = 0; j < n; j++)
+			clusterOf[j] = -1;
+		for (int j = 0; j < n; j++) {
+			int root = find(j);
+			if (clusterOf[root] < 0) {
+				clusterOf[root] = numClusters;
+				clusterSize[numClusters++] = 0;
+			}
+			clusterSize[clusterOf[root]]++;
+		}
+
+		int start = 0;
+		for (int c = 0; c < numClusters; c++) {
+			clusterStart[c] = start;
+			start += clusterSize[c];
+			clusterSize[c] = 0;
+		}
+		for (int j = 0; j < n; j++) {
+			int c = clusterOf[find(j)];
+			members[clusterStart[c] + clusterSize[c]++] = rhombusBatch.rhombusIndex[j];
+		}
+
+		for (int c = 0; c < numClusters; c++) {
+			int d = c;
+			for (; d > 0 && getScore(clusterOrder[d - 1]) < getScore(c); d--)
+				clusterOrder[d] = clusterOrder[d - 1];
+			clusterOrder[d] = c;
+		}
+
+		return numClusters;
+	}
+
+	public int getScore(int c) {
+		int count = clusterSize[c];
+		return count <= 9 ? count : 18 - count;
+	}
+
+	private int find(int j) {
+		while (parent[j] != j) {
+			parent[j] = parent[parent[j]];
+			j = parent[j];
+		}
+		return j;
+	}
+
+	private void union(int j, int k) {
+		int rootJ = find(j);
+		int rootK = find(k);
+		if (rootJ < rootK)
+			parent[rootK] = rootJ;
+		else if (rootK < rootJ)
+			parent[rootJ] = rootK;
+	}
+
+	private static int hash(int x, int y) {
+		return x * 73856093 ^ y * 19349663;
+	}
+
+	private void ensureCapacity(int n) {
+		if (cellX.length >= n)
+			return;
+
+		int capacity = 2 * n;
+		cellX = new int[capacity];
+		cellY = new int[capacity];
+		size = new double[capacity];
+		parent = new int[capacity];
+		next = new int[capacity];
+		clusterOf = new int[capacity];
+		clusterStart = new int[capacity];
+		clusterSize = new int[capacity];
+		clusterOrder = new int[capacity];
+		members = new int[capacity];
+		tableHead = new int[2 * Integer.highestOneBit(capacity)];
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+public class SessionReader {
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int[] frameOffsets;
+	private final int numFrames;
+	private byte[] frameData = new byte[0];
+	public final int format;
+	public final int width;
+	public final int height;
+	public final float fovX;
+	public final float fovY;
+	public final double[] paramValues;
+	public final int[] flagValues;
+
+	public SessionReader(File sessionFile) throws IOException {
+		file = new RandomAccessFile(sessionFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Session file too large to map: "
+						+ sessionFile);
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != SessionRecorder.MAGIC)
+				throw new IOException("Not a session file: " + sessionFile);
+			if (buffer.getInt() != SessionRecorder.VERSION)
+				throw new IOException("Unsupported session version: "
+						+ sessionFile);
+
+			format = buffer.getInt();
+			width = buffer.getInt();
+			height = buffer.getInt();
+			fovX = buffer.getFloat();
+			fovY = buffer.getFloat();
+
+			paramValues = new double[buffer.getInt()];
+			for (int i = 0; i < paramValues.length; i++)
+				paramValues[i] = buffer.getDouble();
+
+			flagValues = new int[buffer.getInt()];
+			for (int i = 0; i < flagValues.length; i++)
+				flagValues[i] = buffer.getInt();
+
+			int[] offsets = new int[64];
+			int count = 0;
+			while (buffer.remaining() >= 12) {
+				int offset = buffer.position();
+				buffer.getLong();
+				int length = buffer.getInt();
+				if (length < 0 || length > buffer.remaining())
+					break;
+				buffer.position(buffer.position() + length);
+
+				if (count == offsets.length) {
+					int[] grown = new int[offsets.length * 2];
+					System.arraycopy(offsets, 0, grown, 0, count);
+					offsets = grown;
+				}
+				offsets[count++] = offset;
+			}
+			frameOffsets = offsets;
+			numFrames = count;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	public int getNumFrames() {
+		return numFrames;
+	}
+
+	public void readFrame(int index, CapturedFrame frame) {
+		ByteBuffer frameBuffer = buffer.duplicate();
+		frameBuffer.position(frameOffsets[index]);
+		long timestamp = frameBuffer.getLong();
+		int length = frameBuffer.getInt();
+		if (frameData.length != length)
+			frameData = new byte[length];
+		frameBuffer.get(frameData, 0, length);
+
+		frame.put(width, height, format == SessionRecorder.FORMAT_NV21,
+				frameData, timestamp);
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
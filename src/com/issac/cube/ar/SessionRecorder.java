@@ -0,0 +1,121 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.core.Mat;
+
+import com.issac.cube.ar.MenuParam.RubikMenuParam;
+
+public class SessionRecorder {
+
+	public static final int MAGIC = 0x49435331;
+	public static final int VERSION = 1;
+	public static final int FORMAT_RGBA = 0;
+	public static final int FORMAT_NV21 = 1;
+
+	private final File file;
+	private final CameraParameters cameraParameters;
+	private DataOutputStream outputStream = null;
+	private int format;
+	private int width;
+	private int height;
+	private byte[] frameData = new byte[0];
+	public int numFrames = 0;
+	public long numBytes = 0;
+
+	public SessionRecorder(File file, CameraParameters cameraParameters) {
+		this.file = file;
+		this.cameraParameters = cameraParameters;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void record(CvCameraViewFrame inputFrame) throws IOException {
+		Mat gray = inputFrame.gray();
+		Mat nv21 = Util.getNV21Frame(gray);
+		Mat frame = nv21 != null ? nv21 : inputFrame.rgba();
+		int frameFormat = nv21 != null ? FORMAT_NV21 : FORMAT_RGBA;
+
+		try {
+			if (outputStream == null)
+				open(frameFormat, gray.cols(), gray.rows());
+			else if (frameFormat != format || gray.cols() != width
+					|| gray.rows() != height)
+				throw new IOException("Frame format changed while recording "
+						+ file);
+
+			int length = (int) (frame.total() * frame.elemSize());
+			if (frameData.length != length)
+				frameData = new byte[length];
+			frame.get(0, 0, frameData);
+
+			outputStream.writeLong(System.nanoTime());
+			outputStream.writeInt(length);
+			outputStream.write(frameData, 0, length);
+			numFrames++;
+			numBytes += 12 + length;
+		} finally {
+			if (nv21 != null)
+				nv21.release();
+		}
+	}
+
+	private void open(int format, int width, int height) throws IOException {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+
+		outputStream = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 20));
+		outputStream.writeInt(MAGIC);
+		outputStream.writeInt(VERSION);
+		outputStream.writeInt(format);
+		outputStream.writeInt(width);
+		outputStream.writeInt(height);
+		outputStream.writeFloat(cameraParameters == null ? 0.0f
+				: cameraParameters.getFovX());
+		outputStream.writeFloat(cameraParameters == null ? 0.0f
+				: cameraParameters.getFovY());
+
+		RubikMenuParam[] params = MenuParam.getRecognitionParams();
+		outputStream.writeInt(params.length);
+		for (RubikMenuParam param : params)
+			outputStream.writeDouble(param.value);
+
+		int[] flags = MenuParam.getRecognitionFlags();
+		outputStream.writeInt(flags.length);
+		for (int flag : flags)
+			outputStream.writeInt(flag);
+	}
+
+	public void close() throws IOException {
+		if (outputStream != null)
+			outputStream.close();
+		outputStream = null;
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.issac.cube.ar.Constants.AppStateEnum;
+import com.issac.cube.ar.Constants.GestureRecogniztionStateEnum;
+import com.issac.cube.ar.MenuParam.RubikMenuParam;
+
+public class SessionReplayer {
+
+	public static class FrameResult {
+		public int index;
+		public long timestamp;
+		public double millis;
+		public boolean solved;
+		public int numRhombi;
+		public double sigma;
+		public int myHashCode;
+		public GestureRecogniztionStateEnum gestureRecogniztionState;
+		public AppStateEnum appState;
+
+		@Override
+		public String toString() {
+			return String.format("%5d %8.2fms solved=%-5b rhombi=%2d sigma=%6.1f hash=%08x %s %s",
+					index, millis, solved, numRhombi, sigma, myHashCode,
+					gestureRecogniztionState, appState);
+		}
+	}
+
+	public static class Report {
+		public final List<FrameResult> frameResults = new ArrayList<FrameResult>();
+		public int numFrames;
+		public int solvedFrames;
+		public double seconds;
+		public double framesPerSecond;
+		public PerformanceMonitor performanceMonitor;
+		public LatticeTracker latticeTracker;
+		public StickerTracker stickerTracker;
+		public TileColorFusion tileColorFusion;
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (FrameResult frameResult : frameResults)
+				sb.append(frameResult).append('\n');
+			sb.append(String.format(
+					"frames=%d solved=%d time=%.2fs fps=%.1f", numFrames,
+					solvedFrames, seconds, framesPerSecond));
+			if (latticeTracker != null)
+				sb.append('\n').append(latticeTracker);
+			if (stickerTracker != null)
+				sb.append('\n').append(stickerTracker);
+			if (tileColorFusion != null)
+				sb.append('\n').append(tileColorFusion);
+			if (performanceMonitor != null)
+				sb.append('\n').append(performanceMonitor);
+			return sb.toString();
+		}
+	}
+
+	public static class Comparison {
+		public Report baseline;
+		public Report tracked;
+		public int numFrames;
+		public int solvedMismatches;
+		public int hashMismatches;
+		public int gestureMismatches;
+		public int appStateMismatches;
+		public int firstMismatch = -1;
+
+		public boolean isEquivalent() {
+			return solvedMismatches == 0 && hashMismatches == 0
+					&& gestureMismatches == 0 && appStateMismatches == 0
+					&& baseline.numFrames == tracked.numFrames;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"tracking %s frames=%d solved mismatches=%d hash mismatches=%d gesture mismatches=%d app state mismatches=%d first mismatch=%d\n%s",
+					isEquivalent() ? "equivalent" : "NOT EQUIVALENT",
+					numFrames, solvedMismatches, hashMismatches,
+					gestureMismatches, appStateMismatches, firstMismatch,
+					tracked.stickerTracker);
+		}
+	}
+
+	public static Report replay(File sessionFile) throws IOException {
+		return replay(sessionFile, null, false);
+	}
+
+	public static Report replay(File sessionFile, boolean verifyTracking)
+			throws IOException {
+		return replay(sessionFile, verifyTracking ? Boolean.TRUE : null,
+				verifyTracking);
+	}
+
+	public static Comparison compareTracking(File sessionFile)
+			throws IOException {
+		Comparison comparison = new Comparison();
+		comparison.baseline = replay(sessionFile, Boolean.FALSE, false);
+		comparison.tracked = replay(sessionFile, Boolean.TRUE, false);
+
+		comparison.numFrames = Math.min(comparison.baseline.numFrames,
+				comparison.tracked.numFrames);
+		for (int i = 0; i < comparison.numFrames; i++) {
+			FrameResult baseline = comparison.baseline.frameResults.get(i);
+			FrameResult tracked = comparison.tracked.frameResults.get(i);
+			boolean mismatch = false;
+			if (baseline.solved != tracked.solved) {
+				comparison.solvedMismatches++;
+				mismatch = true;
+			}
+			if (baseline.myHashCode != tracked.myHashCode) {
+				comparison.hashMismatches++;
+				mismatch = true;
+			}
+			if (baseline.gestureRecogniztionState != tracked.gestureRecogniztionState) {
+				comparison.gestureMismatches++;
+				mismatch = true;
+			}
+			if (baseline.appState != tracked.appState) {
+				comparison.appStateMismatches++;
+				mismatch = true;
+			}
+			if (mismatch && comparison.firstMismatch < 0)
+				comparison.firstMismatch = i;
+		}
+		return comparison;
+	}
+
+	private static Report replay(File sessionFile, Boolean stickerTracking,
+			boolean verifyTracking) throws IOException {
+		SessionReader sessionReader = new SessionReader(sessionFile);
+		RubikMenuParam[] params = MenuParam.getRecognitionParams();
+		double[] savedParamValues = new double[params.length];
+		for (int i = 0; i < params.length; i++)
+			savedParamValues[i] = params[i].value;
+		int[] savedFlags = MenuParam.getRecognitionFlags();
+
+		StateModel stateModel = new StateModel();
+		stateModel.cameraParameters = new CameraParameters(
+				sessionReader.width, sessionReader.height, sessionReader.fovX,
+				sessionReader.fovY);
+		StateController stateController = new StateController(stateModel,
+				null);
+		ImageRecognizer imageRecognizer = new ImageRecognizer(
+				stateController, stateModel);
+		imageRecognizer.renderOverlay = false;
+		CapturedFrame frame = new CapturedFrame();
+		Report report = new Report();
+		report.performanceMonitor = imageRecognizer.getPerformanceMonitor();
+		report.latticeTracker = imageRecognizer.getLatticeTracker();
+		report.stickerTracker = imageRecognizer.getStickerTracker();
+		report.tileColorFusion = imageRecognizer.getTileColorFusion();
+
+		try {
+			for (int i = 0; i < params.length
+					&& i < sessionReader.paramValues.length; i++)
+				params[i].value = sessionReader.paramValues[i];
+			MenuParam.setRecognitionFlags(sessionReader.flagValues);
+			if (stickerTracking != null)
+				MenuParam.stickerTracking = stickerTracking;
+			imageRecognizer.verifyTracking = verifyTracking;
+
+			long start = System.nanoTime();
+			for (int i = 0; i < sessionReader.getNumFrames(); i++) {
+				sessionReader.readFrame(i, frame);
+
+				long frameStart = System.nanoTime();
+				imageRecognizer.onFrame(frame);
+				long frameEnd = System.nanoTime();
+
+				Face face = stateModel.activeFace;
+				FrameResult frameResult = new FrameResult();
+				frameResult.index = i;
+				frameResult.timestamp = frame.timestamp;
+				frameResult.millis = (frameEnd - frameStart) / 1.0e6;
+				if (face != null) {
+					frameResult.solved = face.solved;
+					frameResult.numRhombi = face.numRhombi;
+					frameResult.sigma = face.lmsResult.sigma;
+					frameResult.myHashCode = face.myHashCode;
+				}
+				frameResult.gestureRecogniztionState = stateModel.gestureRecogniztionState;
+				frameResult.appState = stateModel.appState;
+				report.frameResults.add(frameResult);
+
+				report.numFrames++;
+				if (frameResult.solved)
+					report.solvedFrames++;
+			}
+			report.seconds = (System.nanoTime() - start) / 1.0e9;
+			report.framesPerSecond = report.seconds > 0.0 ? report.numFrames
+					/ report.seconds : 0.0;
+		} finally {
+			for (int i = 0; i < params.length; i++)
+				params[i].value = savedParamValues[i];
+			MenuParam.setRecognitionFlags(savedFlags);
+			imageRecognizer.onCameraViewStopped();
+			frame.release();
+			sessionReader.close();
+		}
+
+		return report;
+	}
+}
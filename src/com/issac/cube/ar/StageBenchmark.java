@@ -0,0 +1,485 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.issac.cube.ar.Constants.ColorTileEnum;
+import com.issac.cube.ar.Constants.FaceNameEnum;
+import com.issac.cube.ar.Constants.PerformanceStageEnum;
+
+/**
+ * Stage timing benchmark. Launch with
+ * {@code adb shell am start -n <package>/com.issac.cube.ar.ARActivity --ez runBenchmark true};
+ * the report is printed to logcat and written to benchmark-<time>.txt in the
+ * external files directory.
+ */
+public class StageBenchmark {
+
+	public static class Result {
+		public final String name;
+		public final int iterations;
+		public final double nanosPerOperation;
+		public final String note;
+
+		public Result(String name, int iterations, double nanosPerOperation) {
+			this(name, iterations, nanosPerOperation, null);
+		}
+
+		public Result(String name, int iterations, double nanosPerOperation,
+				String note) {
+			this.name = name;
+			this.iterations = iterations;
+			this.nanosPerOperation = nanosPerOperation;
+			this.note = note;
+		}
+
+		@Override
+		public String toString() {
+			String result = String.format("%-24s %10.1f us/op (%d ops)", name,
+					nanosPerOperation / 1000.0, iterations);
+			return note == null ? result : result + " " + note;
+		}
+	}
+
+	public static final String EXTRA_RUN_BENCHMARK = "runBenchmark";
+
+	private static final int WARMUP_ITERATIONS = 20;
+	private static final int MEASURED_ITERATIONS = 100;
+	private static final int STEREO_CHECK_FRAMES = 5000;
+	private static final int WIDTH = 1280;
+	private static final int HEIGHT = 720;
+	private static final double LATTICE_LENGTH = 100.0;
+	private static final double TILE_HALF_SIZE = 40.0;
+	private static final double ALPHA_ANGLE = 30.0 * Math.PI / 180.0;
+	private static final double BETA_ANGLE = 120.0 * Math.PI / 180.0;
+	private static final Point ORIGIN = new Point(640.0 - LATTICE_LENGTH
+			* (Math.cos(ALPHA_ANGLE) + Math.cos(BETA_ANGLE)), 360.0
+			- LATTICE_LENGTH * (Math.sin(ALPHA_ANGLE) + Math.sin(BETA_ANGLE)));
+	private static final ColorTileEnum[] TILE_COLORS = { ColorTileEnum.RED,
+			ColorTileEnum.ORANGE, ColorTileEnum.YELLOW, ColorTileEnum.GREEN,
+			ColorTileEnum.BLUE, ColorTileEnum.WHITE };
+
+	private final int warmupIterations;
+	private final int measuredIterations;
+	private final List<Result> resultList = new ArrayList<Result>();
+	private final PerformanceMonitor performanceMonitor = new PerformanceMonitor();
+
+	public StageBenchmark(int warmupIterations, int measuredIterations) {
+		this.warmupIterations = warmupIterations;
+		this.measuredIterations = measuredIterations;
+	}
+
+	public static void runInBackground(final File directory) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				String report = runReport();
+				System.out.println(report);
+				if (directory != null)
+					writeReport(new File(directory, "benchmark-"
+							+ System.currentTimeMillis() + ".txt"), report);
+			}
+		}, "StageBenchmark").start();
+	}
+
+	public static String runReport() {
+		StageBenchmark stageBenchmark = new StageBenchmark(WARMUP_ITERATIONS,
+				MEASURED_ITERATIONS);
+		StringBuilder sb = new StringBuilder();
+		for (Result result : stageBenchmark.run())
+			sb.append(result).append('\n');
+		sb.append(stageBenchmark.getPerformanceMonitor());
+		return sb.toString();
+	}
+
+	private static void writeReport(File file, String report) {
+		FileWriter writer = null;
+		try {
+			writer = new FileWriter(file);
+			writer.write(report);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (writer != null)
+				try {
+					writer.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+		}
+	}
+
+	public PerformanceMonitor getPerformanceMonitor() {
+		return performanceMonitor;
+	}
+
+	public List<Result> run() {
+		resultList.clear();
+		performanceMonitor.reset();
+
+		final Mat image = createFaceImage();
+		final Mat greyscale_image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		final Mat blur_image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		final Mat canny_image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		final Mat dilate_image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		final Mat contour_image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+		final Mat heirarchy = new Mat();
+		int kernelSize = (int) MenuParam.gaussianBlurKernelSizeParam.value;
+		final Size blurKernel = new Size(kernelSize % 2 == 0 ? kernelSize + 1
+				: kernelSize, kernelSize % 2 == 0 ? kernelSize + 1
+				: kernelSize);
+		final Mat dilationKernel = Imgproc.getStructuringElement(
+				Imgproc.MORPH_RECT, new Size(
+						MenuParam.dilationKernelSizeParam.value,
+						MenuParam.dilationKernelSizeParam.value));
+
+		measure(PerformanceStageEnum.GREYSCALE, new Runnable() {
+			@Override
+			public void run() {
+				Imgproc.cvtColor(image, greyscale_image,
+						Imgproc.COLOR_BGR2GRAY);
+			}
+		});
+
+		measure(PerformanceStageEnum.GAUSSIAN, new Runnable() {
+			@Override
+			public void run() {
+				Imgproc.GaussianBlur(greyscale_image, blur_image, blurKernel,
+						-1, -1);
+			}
+		});
+
+		measure(PerformanceStageEnum.CANNY, new Runnable() {
+			@Override
+			public void run() {
+				Imgproc.Canny(blur_image, canny_image,
+						MenuParam.cannyLowerThresholdParam.value,
+						MenuParam.cannyUpperThresholdParam.value, 3, false);
+			}
+		});
+
+		measure(PerformanceStageEnum.DILATION, new Runnable() {
+			@Override
+			public void run() {
+				Imgproc.dilate(canny_image, dilate_image, dilationKernel);
+			}
+		});
+
+		final List<MatOfPoint> contours = new LinkedList<MatOfPoint>();
+		measure(PerformanceStageEnum.CONTOUR, new Runnable() {
+			@Override
+			public void run() {
+				contours.clear();
+				dilate_image.copyTo(contour_image);
+				Imgproc.findContours(contour_image, contours, heirarchy,
+						Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+			}
+		});
+
+		final PolygonApproximator polygonApproximator = new PolygonApproximator();
+		final RhombusBatch polygonBatch = new RhombusBatch();
+		measure(PerformanceStageEnum.POLYGON, new Runnable() {
+			@Override
+			public void run() {
+				polygonBatch.clear();
+				for (MatOfPoint contour : contours) {
+					polygonApproximator.load(contour);
+					if (polygonApproximator.contourArea() < MenuParam.minimumContourAreaParam.value)
+						continue;
+
+					polygonApproximator.approximate(MenuParam.polygonEpsilonParam.value);
+					polygonApproximator.addTo(polygonBatch, 1);
+				}
+			}
+		});
+
+		final List<Point[]> polygons = createPolygons(9, new Random(1234));
+		final RhombusBatch rhombusBatch = new RhombusBatch();
+		measure(PerformanceStageEnum.RHOMBUS, new Runnable() {
+			@Override
+			public void run() {
+				createRhombusBatch(polygons, rhombusBatch);
+			}
+		});
+
+		createRhombusBatch(polygons, rhombusBatch);
+		measure(PerformanceStageEnum.FACE_FIT, new Runnable() {
+			@Override
+			public void run() {
+				new Face().fitLattice(rhombusBatch);
+			}
+		});
+
+		for (int numRhombi : new int[] { 9, 30, 100 }) {
+			final Face layoutFace = new Face();
+			layoutFace.fitLattice(createRhombusBatch(
+					createPolygons(numRhombi, new Random(1234)),
+					new RhombusBatch()));
+			measure("Layout " + numRhombi + " rhombi", new Runnable() {
+				@Override
+				public void run() {
+					layoutFace.doInitialLayout();
+				}
+			});
+		}
+
+		final Face face = new Face();
+		face.processRhombuses(rhombusBatch, image);
+		final TileColorSampler tileColorSampler = new TileColorSampler();
+		measure(PerformanceStageEnum.COLOR, new Runnable() {
+			@Override
+			public void run() {
+				new ColorRecognizer.FaceRecognizer(face).recognize(image, null,
+						tileColorSampler);
+			}
+		});
+
+		final ColorLookupTable colorLookupTable = new ColorLookupTable();
+		measure("ColorLookupTable", new Runnable() {
+			@Override
+			public void run() {
+				new ColorRecognizer.FaceRecognizer(face, colorLookupTable)
+						.recognize(image, null, tileColorSampler);
+			}
+		});
+
+		final StateModel stateModel = createCubeStateModel();
+		measure("CubeRecognizer", new Runnable() {
+			@Override
+			public void run() {
+				new ColorRecognizer.CubeRecognizer(stateModel).recognize();
+			}
+		});
+
+		measure(PerformanceStageEnum.POSE, new Runnable() {
+			@Override
+			public void run() {
+				new CubePoseEstimator().estimate(face, image, stateModel);
+			}
+		});
+
+		final StereoComposer stereoComposer = new StereoComposer();
+		measure(PerformanceStageEnum.STEREO, new Runnable() {
+			@Override
+			public void run() {
+				stereoComposer.compose(image);
+			}
+		});
+		stereoComposer.release();
+
+		long start = System.nanoTime();
+		String note = "stable across frame size change";
+		try {
+			checkStereoComposition(STEREO_CHECK_FRAMES);
+		} catch (IllegalStateException e) {
+			note = "FAILED: " + e.getMessage();
+		}
+		resultList.add(new Result("Stereo composition check",
+				3 * STEREO_CHECK_FRAMES, (double) (System.nanoTime() - start)
+						/ (3 * STEREO_CHECK_FRAMES), note));
+
+		image.release();
+		greyscale_image.release();
+		blur_image.release();
+		canny_image.release();
+		dilate_image.release();
+		contour_image.release();
+		heirarchy.release();
+		dilationKernel.release();
+
+		return resultList;
+	}
+
+	public static void checkStereoComposition(int numFrames) {
+		Mat image = createFaceImage();
+		Mat smallImage = new Mat();
+		Imgproc.resize(image, smallImage, new Size(WIDTH / 2, HEIGHT / 2));
+		StereoComposer stereoComposer = new StereoComposer();
+		try {
+			checkStereoComposition(stereoComposer, image, numFrames, 1);
+			checkStereoComposition(stereoComposer, smallImage, numFrames, 2);
+			checkStereoComposition(stereoComposer, image, numFrames, 3);
+		} finally {
+			stereoComposer.release();
+			smallImage.release();
+			image.release();
+		}
+	}
+
+	private static void checkStereoComposition(StereoComposer stereoComposer,
+			Mat image, int numFrames, long expectedAllocations) {
+		Mat output = stereoComposer.compose(image);
+		long outputAddress = output.dataAddr();
+		if (output.rows() != image.rows() || output.cols() != image.cols())
+			throw new IllegalStateException("output size " + output.size()
+					+ " for frame size " + image.size());
+		for (int i = 1; i < numFrames; i++)
+			if (stereoComposer.compose(image).dataAddr() != outputAddress)
+				throw new IllegalStateException("output buffer moved at frame "
+						+ i + " of size " + image.size());
+		if (stereoComposer.allocations != expectedAllocations)
+			throw new IllegalStateException(stereoComposer.allocations
+					+ " output allocations, expected " + expectedAllocations);
+
+		int halfRows = output.rows() / 2;
+		int halfCols = output.cols() / 2;
+		Mat leftView = output.submat(halfRows / 2, halfRows / 2 + halfRows, 0,
+				halfCols);
+		Mat rightView = output.submat(halfRows / 2, halfRows / 2 + halfRows,
+				halfCols, halfCols * 2);
+		try {
+			if (Core.norm(leftView, Core.NORM_INF) == 0.0
+					|| Core.norm(leftView, rightView, Core.NORM_INF) != 0.0)
+				throw new IllegalStateException(
+						"views do not write into the output buffer of size "
+								+ image.size());
+		} finally {
+			leftView.release();
+			rightView.release();
+		}
+	}
+
+	private void measure(PerformanceStageEnum stage, Runnable runnable) {
+		measure(stage.name(), stage, runnable);
+	}
+
+	private void measure(String name, Runnable runnable) {
+		measure(name, null, runnable);
+	}
+
+	private void measure(String name, PerformanceStageEnum stage,
+			Runnable runnable) {
+		for (int i = 0; i < warmupIterations; i++)
+			runnable.run();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < measuredIterations; i++) {
+			long time = System.nanoTime();
+			runnable.run();
+			if (stage != null)
+				performanceMonitor.record(stage, time);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		resultList.add(new Result(name, measuredIterations, (double) elapsed
+				/ measuredIterations));
+	}
+
+	public static Mat createFaceImage() {
+		Mat image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, new Scalar(128.0,
+				128.0, 128.0, 255.0));
+
+		MatOfPoint body = new MatOfPoint(getTileCorners(1.0, 1.0,
+				1.5 * LATTICE_LENGTH));
+		Core.fillConvexPoly(image, body, new Scalar(20.0, 20.0, 20.0, 255.0));
+		body.release();
+
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++) {
+				Scalar color = TILE_COLORS[(n * 3 + m) % TILE_COLORS.length].tileColor;
+				MatOfPoint tile = new MatOfPoint(getTileCorners(n, m,
+						TILE_HALF_SIZE));
+				Core.fillConvexPoly(image, tile, new Scalar(color.val[0],
+						color.val[1], color.val[2], 255.0));
+				tile.release();
+			}
+
+		return image;
+	}
+
+	public static List<Point[]> createPolygons(int numRhombi, Random random) {
+		List<Point[]> polygons = new ArrayList<Point[]>(numRhombi);
+		for (int i = 0; i < numRhombi; i++)
+			if (i < 9)
+				polygons.add(getTileCorners(i / 3, i % 3, TILE_HALF_SIZE));
+			else
+				polygons.add(getTileCorners(-4.0 + 10.0 * random.nextDouble(),
+						-4.0 + 10.0 * random.nextDouble(), TILE_HALF_SIZE
+								* (0.8 + 0.3 * random.nextDouble())));
+		return polygons;
+	}
+
+	public static RhombusBatch createRhombusBatch(List<Point[]> polygons,
+			RhombusBatch rhombusBatch) {
+		rhombusBatch.clear();
+		for (Point[] polygon : polygons)
+			rhombusBatch.add(polygon);
+		rhombusBatch.qualify();
+		rhombusBatch.removeOutliers();
+		return rhombusBatch;
+	}
+
+	private static Point[] getTileCorners(double n, double m, double halfSize) {
+		double cosAlpha = Math.cos(ALPHA_ANGLE);
+		double sinAlpha = Math.sin(ALPHA_ANGLE);
+		double cosBeta = Math.cos(BETA_ANGLE);
+		double sinBeta = Math.sin(BETA_ANGLE);
+		double x = ORIGIN.x + LATTICE_LENGTH * (n * cosAlpha + m * cosBeta);
+		double y = ORIGIN.y + LATTICE_LENGTH * (n * sinAlpha + m * sinBeta);
+
+		return new Point[] {
+				new Point(x - halfSize * (cosAlpha + cosBeta), y - halfSize
+						* (sinAlpha + sinBeta)),
+				new Point(x + halfSize * (cosAlpha - cosBeta), y + halfSize
+						* (sinAlpha - sinBeta)),
+				new Point(x + halfSize * (cosAlpha + cosBeta), y + halfSize
+						* (sinAlpha + sinBeta)),
+				new Point(x - halfSize * (cosAlpha - cosBeta), y - halfSize
+						* (sinAlpha - sinBeta)) };
+	}
+
+	private static StateModel createCubeStateModel() {
+		StateModel stateModel = new StateModel();
+		stateModel.cameraParameters = new CameraParameters(WIDTH, HEIGHT,
+				(float) (60.0 * Math.PI / 180.0),
+				(float) (35.0 * Math.PI / 180.0));
+
+		FaceNameEnum[] faceNames = FaceNameEnum.values();
+		for (int f = 0; f < faceNames.length; f++) {
+			Face face = new Face();
+			face.faceNameEnum = faceNames[f];
+			for (int n = 0; n < 3; n++)
+				for (int m = 0; m < 3; m++) {
+					double[] color = TILE_COLORS[(f + 3 * n + m)
+							% TILE_COLORS.length].tileColor.val;
+					face.measuredColorArray[n][m] = new double[] {
+							color[0] + 10.0, color[1] - 10.0, color[2],
+							255.0 };
+				}
+			stateModel.faceMap.put(faceNames[f], face);
+		}
+		return stateModel;
+	}
+}
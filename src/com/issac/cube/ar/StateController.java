@@ -209,8 +209,7 @@ public class StateController {
 			} while (moveNumonic.trim().isEmpty()
 					|| moveNumonic.charAt(0) == '/');
 
-			activity.mediaPlayer.stop();
-			activity.mediaPlayer.start();
+			playNotification();
 
 			if (stateModel.solutionResultIndex == stateModel.solutionResultsArray.length)
 				stateModel.appState = AppStateEnum.DONE;
@@ -256,8 +255,7 @@ public class StateController {
 			break;
 
 		case SEARCHING:
-			activity.mediaPlayer.stop();
-			activity.mediaPlayer.start();
+			playNotification();
 
 			stateModel.adopt(candidateFace);
 
@@ -319,7 +317,7 @@ public class StateController {
 		case COMPLETE:
 		case BAD_COLORS:
 			if (stateModel.appState == AppStateEnum.COMPLETE
-					&& !stateModel.manualColor)
+					&& !stateModel.manualColor && !MenuParam.colorModel)
 				new ColorRecognizer.CubeRecognizer(stateModel).recognize();
 
 			String cubeString = null;
@@ -331,6 +329,8 @@ public class StateController {
 
 			if (stateModel.appState == AppStateEnum.BAD_COLORS) {
 				stateModel.appState = AppStateEnum.WAIT_SOLVING;
+				if (activity == null)
+					break;
 				activity.runOnUiThread(new Runnable() {
 					@Override
 					public void run() {
@@ -357,6 +357,8 @@ public class StateController {
 			}
 
 			stateModel.appState = AppStateEnum.WAIT_SOLVING;
+			if (activity == null)
+				break;
 			Intent intent = new Intent();
 			intent.setClassName("com.hipipal.qpyplus",
 					"com.hipipal.qpyplus.MPyApi");
@@ -381,6 +383,13 @@ public class StateController {
 		}
 	}
 
+	private void playNotification() {
+		if (activity == null)
+			return;
+		activity.mediaPlayer.stop();
+		activity.mediaPlayer.start();
+	}
+
 	public void reset() {
 		scheduleReset = true;
 	}
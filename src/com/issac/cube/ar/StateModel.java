@@ -48,6 +48,7 @@ public class StateModel {
 	public CubePoseEstimator cubePoseEstimator;
 	public CameraParameters cameraParameters;
 	public boolean manualColor = false;
+	public ColorModel colorModel;
 
 	public StateModel() {
 		reset();
@@ -57,41 +58,56 @@ public class StateModel {
 		switch (adoptFaceCount) {
 		case 0:
 			face.faceNameEnum = FaceNameEnum.UP;
-			face.transformedTileArray = face.observedTileArray.clone();
 			break;
 		case 1:
 			face.faceNameEnum = FaceNameEnum.RIGHT;
-			face.transformedTileArray = Util
-					.rotateArrayClockwise(face.observedTileArray);
 			break;
 		case 2:
 			face.faceNameEnum = FaceNameEnum.FRONT;
-			face.transformedTileArray = Util
-					.rotateArrayClockwise(face.observedTileArray);
 			break;
 		case 3:
 			face.faceNameEnum = FaceNameEnum.DOWN;
-			face.transformedTileArray = Util
-					.rotateArrayClockwise(face.observedTileArray);
 			break;
 		case 4:
 			face.faceNameEnum = FaceNameEnum.LEFT;
-			face.transformedTileArray = Util
-					.rotateArray180(face.observedTileArray);
 			break;
 		case 5:
 			face.faceNameEnum = FaceNameEnum.BACK;
-			face.transformedTileArray = Util
-					.rotateArray180(face.observedTileArray);
 			break;
 		}
 
-		if (adoptFaceCount < 6)
+		if (adoptFaceCount < 6) {
 			faceMap.put(face.faceNameEnum, face);
+			if (MenuParam.colorModel) {
+				colorModel.addFace(face);
+				for (Face adoptedFace : faceMap.values())
+					updateTransformedTileArray(adoptedFace);
+			} else
+				updateTransformedTileArray(face);
+		}
 
 		adoptFaceCount++;
 	}
 
+	private static void updateTransformedTileArray(Face face) {
+		ColorTileEnum[][] tileArray = face.modelTileArray != null ? face.modelTileArray
+				: face.observedTileArray;
+		switch (face.faceNameEnum) {
+		case UP:
+			face.transformedTileArray = tileArray.clone();
+			break;
+		case RIGHT:
+		case FRONT:
+		case DOWN:
+			face.transformedTileArray = Util.rotateArrayClockwise(tileArray);
+			break;
+		case LEFT:
+		case BACK:
+			face.transformedTileArray = Util.rotateArray180(tileArray);
+			break;
+		}
+	}
+
 	public Face getFaceByName(FaceNameEnum faceNameEnum) {
 		return faceMap.get(faceNameEnum);
 	}
@@ -162,6 +178,7 @@ public class StateModel {
 		renderPilotCube = true;
 		cubePoseEstimator = null;
 		manualColor = false;
+		colorModel = new ColorModel();
 		Matrix.setIdentityM(additionalGLCubeRotation, 0);
 	}
 }
@@ -0,0 +1,68 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+public class StereoComposer {
+
+	private final Mat output = new Mat();
+	private Mat leftView = null;
+	private Mat rightView = null;
+	public long allocations = 0;
+
+	public Mat compose(Mat image) {
+		int rows = image.rows();
+		int cols = image.cols();
+		if (output.rows() != rows || output.cols() != cols
+				|| output.type() != image.type()) {
+			releaseViews();
+			output.create(rows, cols, image.type());
+			output.setTo(new Scalar(0.0, 0.0, 0.0, 0.0));
+			int halfRows = rows / 2;
+			int halfCols = cols / 2;
+			leftView = output.submat(halfRows / 2, halfRows / 2 + halfRows, 0,
+					halfCols);
+			rightView = output.submat(halfRows / 2, halfRows / 2 + halfRows,
+					halfCols, halfCols * 2);
+			allocations++;
+		}
+
+		Imgproc.resize(image, leftView, leftView.size(), 0, 0,
+				Imgproc.INTER_LINEAR);
+		leftView.copyTo(rightView);
+		return output;
+	}
+
+	public void release() {
+		releaseViews();
+		output.release();
+	}
+
+	private void releaseViews() {
+		if (leftView != null)
+			leftView.release();
+		if (rightView != null)
+			rightView.release();
+		leftView = null;
+		rightView = null;
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+public class StickerTracker {
+
+	private static final int MAX_PYRAMID_LEVEL = 3;
+	private static final double VERIFY_TOLERANCE = 0.25;
+
+	private Mat previousGreyscale = new Mat();
+	private Mat greyscale = new Mat();
+	private Mat image = null;
+	private Mat greyscaleFrame = null;
+	private Mat currentGreyscale = null;
+	private boolean hasPrevious = false;
+	private final MatOfPoint2f previousCorners = new MatOfPoint2f();
+	private final MatOfPoint2f nextCorners = new MatOfPoint2f();
+	private final MatOfByte status = new MatOfByte();
+	private final MatOfFloat error = new MatOfFloat();
+	private final TermCriteria termCriteria = new TermCriteria(
+			TermCriteria.COUNT | TermCriteria.EPS, 20, 0.03);
+	private final float[] cornerBuffer = new float[2 * 16];
+	private final byte[] statusBuffer = new byte[16];
+	private final Size windowSize = new Size();
+	private final double[] tileCenterX = new double[9];
+	private final double[] tileCenterY = new double[9];
+	private final boolean[] tileTracked = new boolean[9];
+	private boolean tracking = false;
+	private int framesSinceDetection = 0;
+	public long trackedFrames = 0;
+	public long lostFrames = 0;
+	public long detectedFrames = 0;
+	public long verifiedFrames = 0;
+	public long matchedFrames = 0;
+	public double maximumDeviation = 0.0;
+	private double totalDeviation = 0.0;
+
+	public StickerTracker() {
+		previousCorners.alloc(16);
+	}
+
+	public void setFrame(Mat image, Mat greyscaleFrame) {
+		this.image = image;
+		this.greyscaleFrame = greyscaleFrame;
+		currentGreyscale = null;
+	}
+
+	private Mat getGreyscale() {
+		if (currentGreyscale == null) {
+			if (greyscaleFrame != null)
+				currentGreyscale = greyscaleFrame;
+			else {
+				Imgproc.cvtColor(image, greyscale, Imgproc.COLOR_BGR2GRAY);
+				currentGreyscale = greyscale;
+			}
+		}
+		return currentGreyscale;
+	}
+
+	public boolean isTracking() {
+		Mat frame = greyscaleFrame != null ? greyscaleFrame : image;
+		return tracking && hasPrevious
+				&& framesSinceDetection < MenuParam.stickerTrackingInterval
+				&& previousGreyscale.size().equals(frame.size());
+	}
+
+	public Face track() {
+		if (!isTracking())
+			return null;
+
+		Video.calcOpticalFlowPyrLK(previousGreyscale, getGreyscale(),
+				previousCorners, nextCorners, status, error, windowSize,
+				MAX_PYRAMID_LEVEL, termCriteria);
+		nextCorners.get(0, 0, cornerBuffer);
+		status.get(0, 0, statusBuffer);
+
+		for (int n = 0; n < 3; n++)
+			for (int m = 0; m < 3; m++) {
+				int t = n * 3 + m;
+				int c = n * 4 + m;
+				tileTracked[t] = statusBuffer[c] != 0
+						&& statusBuffer[c + 1] != 0 && statusBuffer[c + 4] != 0
+						&& statusBuffer[c + 5] != 0;
+				tileCenterX[t] = (cornerBuffer[2 * c] + cornerBuffer[2 * c + 2]
+						+ cornerBuffer[2 * c + 8] + cornerBuffer[2 * c + 10]) / 4;
+				tileCenterY[t] = (cornerBuffer[2 * c + 1]
+						+ cornerBuffer[2 * c + 3] + cornerBuffer[2 * c + 9]
+						+ cornerBuffer[2 * c + 11]) / 4;
+			}
+
+		Face face = new Face();
+		if (!face.fitTrackedLattice(tileCenterX, tileCenterY, tileTracked)) {
+			lostFrames++;
+			tracking = false;
+			return null;
+		}
+		trackedFrames++;
+		return face;
+	}
+
+	public void endFrame(Face face, boolean tracked) {
+		if (face == null || !face.solved)
+			tracking = false;
+		else {
+			if (tracked)
+				framesSinceDetection++;
+			else {
+				framesSinceDetection = 0;
+				detectedFrames++;
+			}
+			setCorners(face);
+			tracking = true;
+		}
+
+		hasPrevious = tracking
+				&& framesSinceDetection < MenuParam.stickerTrackingInterval;
+		if (!hasPrevious)
+			return;
+
+		Mat frame = getGreyscale();
+		if (frame == greyscale) {
+			greyscale = previousGreyscale;
+			previousGreyscale = frame;
+		} else
+			frame.copyTo(previousGreyscale);
+	}
+
+	public void verify(Face trackedFace, Face detectedFace) {
+		double deviation = 0.0;
+		for (int t = 0; t < 9; t++) {
+			Point trackedCenter = trackedFace.tileCenterArray[t / 3][t % 3];
+			Point detectedCenter = detectedFace.tileCenterArray[t / 3][t % 3];
+			double dx = trackedCenter.x - detectedCenter.x;
+			double dy = trackedCenter.y - detectedCenter.y;
+			deviation = Math.max(deviation, Math.sqrt(dx * dx + dy * dy));
+		}
+		deviation /= Math.min(detectedFace.alphaLatticLength,
+				detectedFace.betaLatticLength);
+
+		verifiedFrames++;
+		if (deviation <= VERIFY_TOLERANCE)
+			matchedFrames++;
+		totalDeviation += deviation;
+		maximumDeviation = Math.max(maximumDeviation, deviation);
+	}
+
+	private void setCorners(Face face) {
+		double alphaX = face.alphaLatticLength * face.cosAlpha;
+		double alphaY = face.alphaLatticLength * face.sinAlpha;
+		double betaX = face.betaLatticLength * face.cosBeta;
+		double betaY = face.betaLatticLength * face.sinBeta;
+		for (int n = 0; n < 4; n++)
+			for (int m = 0; m < 4; m++) {
+				int c = n * 4 + m;
+				cornerBuffer[2 * c] = (float) (face.lmsResult.origin.x
+						+ (n - 0.5) * alphaX + (m - 0.5) * betaX);
+				cornerBuffer[2 * c + 1] = (float) (face.lmsResult.origin.y
+						+ (n - 0.5) * alphaY + (m - 0.5) * betaY);
+			}
+		previousCorners.put(0, 0, cornerBuffer);
+
+		int size = (int) (0.5 * Math.min(face.alphaLatticLength,
+				face.betaLatticLength));
+		windowSize.width = windowSize.height = Math.max(9, Math.min(41, size)) | 1;
+	}
+
+	public void reset() {
+		tracking = false;
+		hasPrevious = false;
+		framesSinceDetection = 0;
+	}
+
+	public void release() {
+		previousGreyscale.release();
+		greyscale.release();
+		previousCorners.release();
+		nextCorners.release();
+		status.release();
+		error.release();
+	}
+
+	@Override
+	public String toString() {
+		String result = String.format(
+				"sticker tracking tracked=%d lost=%d detected=%d",
+				trackedFrames, lostFrames, detectedFrames);
+		if (verifiedFrames > 0)
+			result += String.format(
+					" verified=%d matched=%d mean deviation=%.3f max deviation=%.3f",
+					verifiedFrames, matchedFrames, totalDeviation
+							/ verifiedFrames, maximumDeviation);
+		return result;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import org.opencv.core.Point;
+
+import com.issac.cube.ar.Constants.ColorTileEnum;
+
+public class TileColorFusion {
+
+	private static final int RING_SIZE = 5;
+	private static final double REGISTRATION_TOLERANCE = 0.25;
+	private static final double MIN_VOTE_WEIGHT = 0.1;
+	private static final ColorTileEnum[] COLOR_TILES = ColorTileEnum.values();
+
+	private final int[] candidateRing = new int[RING_SIZE * 9];
+	private final double[] weightRing = new double[RING_SIZE * 9];
+	private final double[] colorRing = new double[RING_SIZE * 9 * 3];
+	private final double[] votes = new double[COLOR_TILES.length];
+	private final double[] lastCenterX = new double[9];
+	private final double[] lastCenterY = new double[9];
+	private int head = 0;
+	private int size = 0;
+	public long fusedFaces = 0;
+	public long correctedTiles = 0;
+	public long resets = 0;
+
+	public synchronized void fuse(Face face) {
+		if (!isRegistered(face)) {
+			if (size > 0)
+				resets++;
+			head = size = 0;
+		}
+
+		for (int t = 0; t < 9; t++) {
+			int i = head * 9 + t;
+			double[] measuredColor = face.measuredColorArray[t / 3][t % 3];
+			candidateRing[i] = face.observedTileArray[t / 3][t % 3].ordinal();
+			weightRing[i] = Math.max(MIN_VOTE_WEIGHT,
+					face.colorConfidenceArray[t / 3][t % 3]);
+			System.arraycopy(measuredColor, 0, colorRing, i * 3, 3);
+			lastCenterX[t] = face.tileCenterArray[t / 3][t % 3].x;
+			lastCenterY[t] = face.tileCenterArray[t / 3][t % 3].y;
+		}
+		int current = head;
+		head = (head + 1) % RING_SIZE;
+		size = Math.min(size + 1, RING_SIZE);
+
+		for (int t = 0; t < 9; t++) {
+			for (int c = 0; c < votes.length; c++)
+				votes[c] = 0.0;
+			double totalVotes = 0.0;
+			for (int k = 0; k < size; k++) {
+				int i = k * 9 + t;
+				votes[candidateRing[i]] += weightRing[i];
+				totalVotes += weightRing[i];
+			}
+
+			int best = candidateRing[current * 9 + t];
+			for (int c = 0; c < votes.length; c++)
+				if (votes[c] > votes[best])
+					best = c;
+
+			double[] measuredColor = face.measuredColorArray[t / 3][t % 3];
+			double weight = 0.0;
+			measuredColor[0] = measuredColor[1] = measuredColor[2] = 0.0;
+			for (int k = 0; k < size; k++) {
+				int i = k * 9 + t;
+				if (candidateRing[i] != best)
+					continue;
+				for (int j = 0; j < 3; j++)
+					measuredColor[j] += weightRing[i] * colorRing[i * 3 + j];
+				weight += weightRing[i];
+			}
+			for (int j = 0; j < 3; j++)
+				measuredColor[j] /= weight;
+
+			if (COLOR_TILES[best] != face.observedTileArray[t / 3][t % 3])
+				correctedTiles++;
+			face.observedTileArray[t / 3][t % 3] = COLOR_TILES[best];
+			face.colorConfidenceArray[t / 3][t % 3] = votes[best]
+					/ totalVotes;
+		}
+
+		face.updateHashCode();
+		fusedFaces++;
+	}
+
+	private boolean isRegistered(Face face) {
+		if (size == 0)
+			return false;
+
+		double tolerance = REGISTRATION_TOLERANCE
+				* Math.min(face.alphaLatticLength, face.betaLatticLength);
+		for (int t = 0; t < 9; t++) {
+			Point tileCenter = face.tileCenterArray[t / 3][t % 3];
+			double dx = tileCenter.x - lastCenterX[t];
+			double dy = tileCenter.y - lastCenterY[t];
+			if (dx * dx + dy * dy > tolerance * tolerance)
+				return false;
+		}
+		return true;
+	}
+
+	public synchronized void reset() {
+		if (size > 0)
+			resets++;
+		head = size = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"color fusion fused=%d corrected tiles=%d resets=%d",
+				fusedFaces, correctedTiles, resets);
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * License:
+ *
+ *  GPL
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.issac.cube.ar;
+
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+public class TileColorSampler {
+
+	private static final double WINDOW_RATIO = 0.1;
+	private static final int MIN_HALF_SIZE = 2;
+
+	private byte[] buffer = new byte[0];
+	private final int[] tileLeft = new int[9];
+	private final int[] tileTop = new int[9];
+	private final boolean[] tileInside = new boolean[9];
+	private final double[] tileLuma = new double[9];
+	private int windowLeft, windowTop, windowRight, windowBottom;
+	public final double[] means = new double[9 * 4];
+
+	public static int getHalfSize(Face face) {
+		return Math.max(MIN_HALF_SIZE, (int) (WINDOW_RATIO * Math.min(
+				face.alphaLatticLength, face.betaLatticLength)));
+	}
+
+	public double[] sample(Mat image, Mat nv21, Face face) {
+		Arrays.fill(means, 0.0);
+		int half = getHalfSize(face);
+		if (nv21 != null)
+			sampleNV21(nv21, face, half);
+		else
+			sampleRGBA(image, face, half);
+		return means;
+	}
+
+	private void sampleRGBA(Mat image, Face face, int half) {
+		int channels = image.channels();
+		int size = 2 * half;
+		if (!locateTiles(face, half, image.cols(), image.rows(), false))
+			return;
+
+		int stride = read(image, windowTop, windowLeft, windowBottom
+				- windowTop, (windowRight - windowLeft) * channels);
+		for (int t = 0; t < 9; t++) {
+			if (!tileInside[t])
+				continue;
+			int offset = (tileTop[t] - windowTop) * stride
+					+ (tileLeft[t] - windowLeft) * channels;
+			for (int y = 0; y < size; y++)
+				for (int x = 0, i = offset + y * stride; x < size; x++)
+					for (int c = 0; c < channels; c++)
+						means[t * 4 + c] += buffer[i++] & 0xFF;
+			for (int c = 0; c < channels; c++)
+				means[t * 4 + c] /= size * size;
+		}
+	}
+
+	private void sampleNV21(Mat nv21, Face face, int half) {
+		int width = nv21.cols();
+		int height = nv21.rows() * 2 / 3;
+		int size = 2 * half;
+		if (!locateTiles(face, half, width, height, true))
+			return;
+
+		int stride = read(nv21, windowTop, windowLeft, windowBottom
+				- windowTop, windowRight - windowLeft);
+		Arrays.fill(tileLuma, 0.0);
+		for (int t = 0; t < 9; t++) {
+			if (!tileInside[t])
+				continue;
+			int offset = (tileTop[t] - windowTop) * stride + tileLeft[t]
+					- windowLeft;
+			for (int y = 0; y < size; y++)
+				for (int x = 0, i = offset + y * stride; x < size; x++)
+					tileLuma[t] += buffer[i++] & 0xFF;
+		}
+
+		stride = read(nv21, height + windowTop / 2, windowLeft,
+				(windowBottom - windowTop) / 2, windowRight - windowLeft);
+		for (int t = 0; t < 9; t++) {
+			if (!tileInside[t])
+				continue;
+			int offset = (tileTop[t] - windowTop) / 2 * stride + tileLeft[t]
+					- windowLeft;
+			double u = 0.0, v = 0.0;
+			for (int y = 0; y < half; y++)
+				for (int x = 0, i = offset + y * stride; x < size; x += 2) {
+					v += buffer[i++] & 0xFF;
+					u += buffer[i++] & 0xFF;
+				}
+
+			double[] rgb = Util.getRGBfromYUV420(tileLuma[t] / (size * size), u
+					/ (half * half), v / (half * half));
+			System.arraycopy(rgb, 0, means, t * 4, 4);
+		}
+	}
+
+	private boolean locateTiles(Face face, int half, int width, int height,
+			boolean evenOrigin) {
+		int size = 2 * half;
+		windowLeft = windowTop = Integer.MAX_VALUE;
+		windowRight = windowBottom = Integer.MIN_VALUE;
+		for (int t = 0; t < 9; t++) {
+			Point tileCenter = face.tileCenterArray[t / 3][t % 3];
+			tileInside[t] = tileCenter.x >= half
+					&& tileCenter.x <= width - half && tileCenter.y >= half
+					&& tileCenter.y <= height - half;
+			if (!tileInside[t])
+				continue;
+
+			if (evenOrigin) {
+				tileLeft[t] = ((int) tileCenter.x - half) & ~1;
+				tileTop[t] = ((int) tileCenter.y - half) & ~1;
+			} else {
+				tileLeft[t] = (int) (tileCenter.x - half);
+				tileTop[t] = (int) (tileCenter.y - half);
+			}
+			windowLeft = Math.min(windowLeft, tileLeft[t]);
+			windowTop = Math.min(windowTop, tileTop[t]);
+			windowRight = Math.max(windowRight, tileLeft[t] + size);
+			windowBottom = Math.max(windowBottom, tileTop[t] + size);
+		}
+		return windowLeft <= windowRight;
+	}
+
+	private int read(Mat mat, int row, int col, int rows, int rowBytes) {
+		if (buffer.length < rows * rowBytes)
+			buffer = new byte[rows * rowBytes];
+
+		Mat window = mat.submat(row, row + rows, col, col + rowBytes
+				/ mat.channels());
+		window.get(0, 0, buffer);
+		window.release();
+		return rowBytes;
+	}
+}
@@ -22,6 +22,10 @@
  */
 package com.issac.cube.ar;
 
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+
 import com.issac.cube.ar.Constants.ColorTileEnum;
 
 public class Util {
@@ -30,12 +34,63 @@ public class Util {
 		if (rgb == null)
 			return new double[] { 0, 0, 0, 0 };
 		double[] yuv = new double[4];
-		yuv[0] = 0.229 * rgb[0] + 0.587 * rgb[1] + 0.114 * rgb[2];
-		yuv[1] = -0.147 * rgb[0] + -0.289 * rgb[1] + 0.436 * rgb[2];
-		yuv[2] = 0.615 * rgb[0] + -0.515 * rgb[1] + -0.100 * rgb[2];
+		getYUVfromRGB(rgb, yuv, 0);
 		return yuv;
 	}
 
+	public static void getYUVfromRGB(double[] rgb, double[] yuv, int offset) {
+		yuv[offset] = 0.229 * rgb[0] + 0.587 * rgb[1] + 0.114 * rgb[2];
+		yuv[offset + 1] = -0.147 * rgb[0] + -0.289 * rgb[1] + 0.436 * rgb[2];
+		yuv[offset + 2] = 0.615 * rgb[0] + -0.515 * rgb[1] + -0.100 * rgb[2];
+	}
+
+	public static void getLabfromRGB(double[] rgb, double[] lab, int offset) {
+		double r = getLinearFromSRGB(rgb[0] / 255.0);
+		double g = getLinearFromSRGB(rgb[1] / 255.0);
+		double b = getLinearFromSRGB(rgb[2] / 255.0);
+		double x = getLabComponent((0.4124 * r + 0.3576 * g + 0.1805 * b) / 0.95047);
+		double y = getLabComponent(0.2126 * r + 0.7152 * g + 0.0722 * b);
+		double z = getLabComponent((0.0193 * r + 0.1192 * g + 0.9505 * b) / 1.08883);
+		lab[offset] = 116.0 * y - 16.0;
+		lab[offset + 1] = 500.0 * (x - y);
+		lab[offset + 2] = 200.0 * (y - z);
+	}
+
+	private static double getLinearFromSRGB(double c) {
+		c = Math.max(0.0, Math.min(1.0, c));
+		return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+	}
+
+	private static double getLabComponent(double t) {
+		return t > 216.0 / 24389.0 ? Math.cbrt(t)
+				: (24389.0 / 27.0 * t + 16.0) / 116.0;
+	}
+
+	public static double[] getRGBfromYUV420(double y, double u, double v) {
+		double luma = 1.164 * (y - 16.0);
+		double[] rgb = new double[4];
+		rgb[0] = Math.max(0.0, Math.min(255.0, luma + 1.596 * (v - 128.0)));
+		rgb[1] = Math.max(0.0, Math.min(255.0, luma - 0.813 * (v - 128.0)
+				- 0.391 * (u - 128.0)));
+		rgb[2] = Math.max(0.0, Math.min(255.0, luma + 2.018 * (u - 128.0)));
+		rgb[3] = 255.0;
+		return rgb;
+	}
+
+	public static Mat getNV21Frame(Mat gray) {
+		Size wholeSize = new Size();
+		Point offset = new Point();
+		gray.locateROI(wholeSize, offset);
+		if (offset.x != 0 || offset.y != 0
+				|| (int) wholeSize.width != gray.cols()
+				|| (int) wholeSize.height != gray.rows() * 3 / 2)
+			return null;
+
+		Mat nv21 = gray.submat(0, gray.rows(), 0, gray.cols());
+		nv21.adjustROI(0, gray.rows() / 2, 0, 0);
+		return nv21;
+	}
+
 	public static ColorTileEnum[][] rotateArrayClockwise(ColorTileEnum[][] arg) {
 		ColorTileEnum[][] result = new ColorTileEnum[3][3];
 		result[1][1] = arg[1][1];